@@ -1,33 +1,127 @@
+import cbs.Aggregator;
+import cbs.CdrLoader;
+import cbs.CdrSnapshot;
+import cbs.CdrSorter;
+import cbs.CdrStore;
+import cbs.CdrTailer;
+import cbs.ColumnBackend;
+import cbs.CsvExporter;
+import cbs.Metrics;
+import cbs.MultiFileLoader;
+import cbs.PrefixIndex;
+import cbs.QuarantineWriter;
+import cbs.RatingEngine;
+import cbs.RecordFilter;
+import cbs.RejectReason;
+import cbs.Tariff;
+import cbs.TimeRangeIndex;
+import cbs.Timestamps;
+
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.table.AbstractTableModel;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
 import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.List;
 
 import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableCellRenderer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
 
 public class CallBillingSystemEmbeddedIcons extends JFrame {
 
     private static final String APP_OWNER = "ChimwemweSiyingwa_BIT24126947";
 
     // Table and data
-    private final DefaultTableModel tableModel;
+    private final CdrTableModel tableModel;
     private final JTable table;
-    private final List<CDR> cdrList = new ArrayList<>();
+    private final CdrRowSorter rowSorter;
+    private CdrStore store = new CdrStore();
 
     // UI components
     private final JTextField searchField = new JTextField(22);
     private final JLabel statusLabel = new JLabel("No records loaded.");
+    private final JProgressBar loadProgress = new JProgressBar(0, 1000);
+    private final JButton btnCancelLoad = new JButton("Cancel");
+    private final JPanel progressPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 6, 0));
+    private SwingWorker<CdrLoader.Stats, CdrStore> loadWorker;
+    private ExportWorker exportWorker;
+    // Follow mode: the loaded file is polled for appended lines, which are parsed on this thread
+    private final ScheduledExecutorService followExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "cdr-follow");
+        t.setDaemon(true);
+        return t;
+    });
+    private ScheduledFuture<?> followTask;
+    // Quarantine file of the followed file, open while following; written and closed on the follow thread
+    private QuarantineWriter followQuarantine;
+    private final JMenuItem stopFollowItem = new JMenuItem("Stop Following");
+    // Tariff of the last rating run; new loads are rated with it automatically
+    private Tariff tariff;
+
+    // Search-as-you-type: debounced on the EDT, matched against a store snapshot on a background thread
+    private final javax.swing.Timer searchDebounce = new javax.swing.Timer(200, e -> runPrefixSearch());
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "cdr-search");
+        t.setDaemon(true);
+        return t;
+    });
+    // Header clicks: column permutations are computed here so a long sort never queues behind a search
+    private final ExecutorService sortExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "cdr-sort");
+        t.setDaemon(true);
+        return t;
+    });
+    private int searchSeq;
+    private BitSet searchMatches;
+    // Only touched on the search thread
+    private CdrStore prefixIndexedStore;
+    private PrefixIndex prefixIndex;
+    private CdrStore timeIndexedStore;
+    private TimeRangeIndex timeIndex;
+    // Filter bar: the filter runs over a snapshot on the search thread; rows that arrive later are tested
+    // one at a time until the next run, which follows appends, new datasets and rating
+    private final JTextField filterField = new JTextField(40);
+    private RecordFilter activeFilter;
+    private CdrStore filteredStore;
+    private BitSet filterHits;
+    private int filterCoverage;
+    private int filterSeq;
+    private final javax.swing.Timer filterRefresh = new javax.swing.Timer(500, e -> {
+        if (activeFilter != null) runFilter(activeFilter, true);
+    });
+    private final IntPredicate recordFilter = row -> {
+        int record = store.record(row);
+        if (store.sameDataset(filteredStore) && record < filterCoverage) return filterHits.get(record);
+        return activeFilter.test(store, record);
+    };
+    // Search > Time Range: a modeless dialog, built on first use
+    private JDialog timeRangeDialog;
+    private final RangeTableModel rangeModel = new RangeTableModel();
+    private final JLabel rangeStatus = new JLabel(" ");
+    private int rangeSeq;
+    // Sort menu: the sort runs over a snapshot on the sort thread; a newer sort or dataset discards it
+    private int menuSortSeq;
+    // Reports tab: per-subscriber totals from Aggregator
+    private final JTabbedPane tabs = new JTabbedPane();
+    private final ReportTableModel reportModel = new ReportTableModel();
+    private final JComboBox<Aggregator.GroupBy> reportGroupBy = new JComboBox<>(Aggregator.GroupBy.values());
+    private final JSpinner reportTopN = new JSpinner(new SpinnerNumberModel(100, 0, Integer.MAX_VALUE, 10));
+    // Diagnostics tab: live view of Metrics, refreshed while the tab is showing
+    private final MetricsTableModel metricsModel = new MetricsTableModel();
+    private final javax.swing.Timer metricsRefresh = new javax.swing.Timer(1000, e -> metricsModel.fireTableDataChanged());
     private boolean darkTheme = false;
+    private int ingestThreads = Runtime.getRuntime().availableProcessors();
 
     // Color scheme - green, blue, grey
     private final Color PRIMARY_GREEN = new Color(0, 128, 0);
@@ -38,14 +132,6 @@ public class CallBillingSystemEmbeddedIcons extends JFrame {
     private final Color LIGHT_TEXT = Color.WHITE;
     private final Color DARK_TEXT = DARK_GREY;
 
-    // Date formats
-    private final DateTimeFormatter[] acceptedDateFormats = new DateTimeFormatter[]{
-            DateTimeFormatter.ofPattern("yyyy-MM-dd:HH:mm:ss"),
-            DateTimeFormatter.ofPattern("yyyy-MM-dd:hh:mm:ss"),
-            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"),
-            DateTimeFormatter.ISO_LOCAL_DATE_TIME
-    };
-
     public CallBillingSystemEmbeddedIcons() {
         super("CBS – " + APP_OWNER);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -63,8 +149,7 @@ public class CallBillingSystemEmbeddedIcons extends JFrame {
 
         // Buttons with embedded icons
         JButton btnLoad = createToolButton(drawIcon("folder", 28, 28, PRIMARY_GREEN), "Load CDRs", e -> actionLoad());
-        JButton btnLinear = createToolButton(drawIcon("search", 28, 28, SECONDARY_BLUE), "Linear Search", e -> actionLinearSearchDialog());
-        JButton btnBinary = createToolButton(drawIcon("search2", 28, 28, SECONDARY_BLUE), "Binary Search", e -> actionBinarySearchDialog());
+        JButton btnFind = createToolButton(drawIcon("search", 28, 28, SECONDARY_BLUE), "Find by Call ID", e -> actionFindDialog());
         JButton btnSort = createToolButton(drawIcon("sort", 28, 28, PRIMARY_GREEN), "Sort by Duration", e -> actionSortByDuration());
         JButton btnExport = createToolButton(drawIcon("export", 28, 28, PRIMARY_GREEN), "Export CSV", e -> actionExportCSV());
         JButton btnTheme = createToolButton(drawIcon("theme", 28, 28, DARK_GREY), "Toggle Theme", e -> toggleTheme());
@@ -75,8 +160,7 @@ public class CallBillingSystemEmbeddedIcons extends JFrame {
         toolbar.addSeparator(new Dimension(10, 0));
         toolbar.add(new JLabel("Search: "));
         toolbar.add(searchField);
-        toolbar.add(btnLinear);
-        toolbar.add(btnBinary);
+        toolbar.add(btnFind);
         toolbar.addSeparator(new Dimension(10, 0));
         toolbar.add(btnSort);
         toolbar.add(btnExport);
@@ -87,21 +171,42 @@ public class CallBillingSystemEmbeddedIcons extends JFrame {
         add(toolbar, BorderLayout.NORTH);
 
         // Table model and table
-        String[] cols = {"Call ID", "Sender", "Receiver", "Timestamp", "Duration (ms)"};
-        tableModel = new DefaultTableModel(cols, 0) {
+        tableModel = new CdrTableModel();
+        table = new JTable(tableModel) {
             @Override
-            public boolean isCellEditable(int r, int c) { return false; }
+            public Component prepareRenderer(TableCellRenderer renderer, int row, int column) {
+                Component c = super.prepareRenderer(renderer, row, column);
+                if (searchMatches != null && !isRowSelected(row)
+                        && searchMatches.get(store.record(convertRowIndexToModel(row)))) {
+                    c.setBackground(darkTheme ? new Color(95, 85, 30) : new Color(255, 238, 150));
+                }
+                return c;
+            }
         };
-        table = new JTable(tableModel);
         table.setFillsViewportHeight(true);
         table.setRowHeight(26);
-        table.setAutoCreateRowSorter(true);
+        rowSorter = new CdrRowSorter();
+        table.setRowSorter(rowSorter);
         table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         setupColumnWidths();
 
         JScrollPane scrollPane = new JScrollPane(table);
         scrollPane.setBackground(LIGHT_GREY);
-        add(scrollPane, BorderLayout.CENTER);
+        JPanel records = new JPanel(new BorderLayout());
+        records.add(buildFilterBar(), BorderLayout.NORTH);
+        records.add(scrollPane, BorderLayout.CENTER);
+        tabs.addTab("Records", records);
+        tabs.addTab("Reports", buildReportsPanel());
+        tabs.addTab("Diagnostics", buildDiagnosticsPanel());
+        tabs.addChangeListener(e -> {
+            if (tabs.getSelectedIndex() == 2) {
+                metricsModel.fireTableDataChanged();
+                metricsRefresh.start();
+            } else {
+                metricsRefresh.stop();
+            }
+        });
+        add(tabs, BorderLayout.CENTER);
 
         // Status bar
         JPanel statusBar = new JPanel(new BorderLayout());
@@ -111,42 +216,39 @@ public class CallBillingSystemEmbeddedIcons extends JFrame {
         statusLabel.setText("Ready");
         statusLabel.setForeground(DARK_TEXT);
         statusBar.add(statusLabel, BorderLayout.WEST);
+        loadProgress.setStringPainted(true);
+        loadProgress.setPreferredSize(new Dimension(380, 20));
+        btnCancelLoad.addActionListener(e -> {
+            if (loadWorker != null) loadWorker.cancel(true);
+            if (exportWorker != null) exportWorker.cancel(true);
+        });
+        progressPanel.setOpaque(false);
+        progressPanel.add(loadProgress);
+        progressPanel.add(btnCancelLoad);
+        progressPanel.setVisible(false);
+        statusBar.add(progressPanel, BorderLayout.EAST);
         add(statusBar, BorderLayout.SOUTH);
 
         // Menu bar
         setJMenuBar(buildMenuBar());
 
         // Listeners
+        searchDebounce.setRepeats(false);
+        filterRefresh.setRepeats(false);
         searchField.getDocument().addDocumentListener(new DocumentListener() {
-            private void doSearch() {
-                String q = searchField.getText().trim();
-                if (q.isEmpty()) {
-                    table.clearSelection();
-                    updateStatus(String.format("%d records", cdrList.size()));
-                    return;
-                }
-                int idx = linearSearchIndex(q);
-                if (idx >= 0) {
-                    int viewRow = table.convertRowIndexToView(idx);
-                    table.getSelectionModel().setSelectionInterval(viewRow, viewRow);
-                    table.scrollRectToVisible(table.getCellRect(viewRow, 0, true));
-                    updateStatus("Found (linear): " + q);
-                } else {
-                    table.clearSelection();
-                    updateStatus("No match: " + q);
-                }
-            }
-            public void insertUpdate(DocumentEvent e) { doSearch(); }
-            public void removeUpdate(DocumentEvent e) { doSearch(); }
-            public void changedUpdate(DocumentEvent e) { doSearch(); }
+            public void insertUpdate(DocumentEvent e) { searchDebounce.restart(); }
+            public void removeUpdate(DocumentEvent e) { searchDebounce.restart(); }
+            public void changedUpdate(DocumentEvent e) { searchDebounce.restart(); }
         });
 
+        startEdtWatchdog();
+
         // Double click row to view details
         table.addMouseListener(new MouseAdapter() {
             public void mouseClicked(MouseEvent e) {
                 if (e.getClickCount() == 2 && table.getSelectedRow() >= 0) {
                     int modelRow = table.convertRowIndexToModel(table.getSelectedRow());
-                    showCDRDetails(cdrList.get(modelRow));
+                    showCDRDetails(store.record(modelRow));
                 }
             }
         });
@@ -261,10 +363,12 @@ public class CallBillingSystemEmbeddedIcons extends JFrame {
         table.getColumnModel().getColumn(2).setPreferredWidth(160);
         table.getColumnModel().getColumn(3).setPreferredWidth(360);
         table.getColumnModel().getColumn(4).setPreferredWidth(120);
-        // right align duration
+        table.getColumnModel().getColumn(5).setPreferredWidth(100);
+        // right align duration and charge
         DefaultTableCellRenderer r = new DefaultTableCellRenderer();
         r.setHorizontalAlignment(SwingConstants.RIGHT);
         table.getColumnModel().getColumn(4).setCellRenderer(r);
+        table.getColumnModel().getColumn(5).setCellRenderer(r);
     }
 
     private JButton createToolButton(Icon icon, String tooltip, ActionListener act) {
@@ -292,28 +396,57 @@ public class CallBillingSystemEmbeddedIcons extends JFrame {
         JMenuItem export = new JMenuItem("Export CSV");
         export.setIcon(drawIcon("export", 16, 16, PRIMARY_GREEN));
         export.addActionListener(e -> actionExportCSV());
+        JMenuItem loadMany = new JMenuItem("Load Directory or Files...");
+        loadMany.addActionListener(e -> actionLoadMany());
+        JMenuItem loadGlob = new JMenuItem("Load Matching Files...");
+        loadGlob.addActionListener(e -> actionLoadGlob());
+        JMenuItem follow = new JMenuItem("Follow File...");
+        follow.addActionListener(e -> actionFollow());
+        stopFollowItem.setEnabled(false);
+        stopFollowItem.addActionListener(e -> {
+            stopFollowing();
+            updateStatus(String.format("Stopped following – %,d records", store.size()));
+        });
+        JMenuItem saveSnapshot = new JMenuItem("Save Snapshot...");
+        saveSnapshot.addActionListener(e -> actionSaveSnapshot());
+        JMenuItem threads = new JMenuItem("Ingest Threads...");
+        threads.addActionListener(e -> actionIngestThreads());
         JMenuItem exit = new JMenuItem("Exit");
         exit.setIcon(drawIcon("exit", 16, 16, new Color(200, 60, 60)));
         exit.addActionListener(e -> System.exit(0));
         file.add(load);
+        file.add(loadMany);
+        file.add(loadGlob);
+        file.add(follow);
+        file.add(stopFollowItem);
         file.add(export);
+        file.add(saveSnapshot);
+        file.add(threads);
         file.addSeparator();
         file.add(exit);
 
         JMenu search = new JMenu("Search");
         search.setForeground(DARK_TEXT);
-        JMenuItem lin = new JMenuItem("Linear Search by Call ID");
-        lin.addActionListener(e -> actionLinearSearchDialog());
-        JMenuItem bin = new JMenuItem("Binary Search by Call ID");
-        bin.addActionListener(e -> actionBinarySearchDialog());
-        search.add(lin);
-        search.add(bin);
+        JMenuItem find = new JMenuItem("Find by Call ID...");
+        find.addActionListener(e -> actionFindDialog());
+        search.add(find);
+        JMenuItem timeRange = new JMenuItem("Time Range...");
+        timeRange.addActionListener(e -> actionTimeRangeDialog());
+        search.add(timeRange);
 
         JMenu sort = new JMenu("Sort");
         sort.setForeground(DARK_TEXT);
-        JMenuItem sortDur = new JMenuItem("Selection Sort by Duration (asc)");
-        sortDur.addActionListener(e -> actionSortByDuration());
-        sort.add(sortDur);
+        JCheckBoxMenuItem sortDesc = new JCheckBoxMenuItem("Descending");
+        for (CdrSorter.Key k : CdrSorter.Key.values()) {
+            JMenuItem item = new JMenuItem("By " + k);
+            item.addActionListener(e -> sortBy(k, sortDesc.isSelected(), null, false));
+            sort.add(item);
+        }
+        sort.add(sortDesc);
+        sort.addSeparator();
+        JMenuItem sortCustom = new JMenuItem("Custom Sort...");
+        sortCustom.addActionListener(e -> actionCustomSortDialog());
+        sort.add(sortCustom);
 
         JMenu help = new JMenu("Help");
         help.setForeground(DARK_TEXT);
@@ -330,11 +463,148 @@ public class CallBillingSystemEmbeddedIcons extends JFrame {
         mb.add(file);
         mb.add(search);
         mb.add(sort);
+        mb.add(buildBillingMenu());
         mb.add(Box.createHorizontalGlue());
         mb.add(help);
         return mb;
     }
 
+    private JMenu buildBillingMenu() {
+        JMenu billing = new JMenu("Billing");
+        billing.setForeground(DARK_TEXT);
+        JMenuItem rate = new JMenuItem("Rate with Tariff...");
+        rate.addActionListener(e -> actionRate());
+        billing.add(rate);
+        JMenuItem report = new JMenuItem("Subscriber Report");
+        report.addActionListener(e -> actionRunReport());
+        billing.add(report);
+        return billing;
+    }
+
+    private JPanel buildReportsPanel() {
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT, 8, 4));
+        controls.add(new JLabel("Group by:"));
+        controls.add(reportGroupBy);
+        controls.add(new JLabel("Top (0 = all):"));
+        reportTopN.setPreferredSize(new Dimension(90, reportTopN.getPreferredSize().height));
+        controls.add(reportTopN);
+        JButton run = new JButton("Run Report");
+        run.addActionListener(e -> actionRunReport());
+        controls.add(run);
+
+        JTable reportTable = new JTable(reportModel);
+        reportTable.setFillsViewportHeight(true);
+        reportTable.setRowHeight(26);
+        reportTable.setAutoCreateRowSorter(true);
+        DefaultTableCellRenderer r = new DefaultTableCellRenderer();
+        r.setHorizontalAlignment(SwingConstants.RIGHT);
+        for (int c = 1; c < reportModel.getColumnCount(); c++) reportTable.getColumnModel().getColumn(c).setCellRenderer(r);
+        reportTable.getColumnModel().getColumn(0).setPreferredWidth(320);
+
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(controls, BorderLayout.NORTH);
+        panel.add(new JScrollPane(reportTable), BorderLayout.CENTER);
+        return panel;
+    }
+
+    private JPanel buildDiagnosticsPanel() {
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT, 8, 4));
+        JButton reset = new JButton("Reset");
+        reset.addActionListener(e -> {
+            Metrics.reset();
+            metricsModel.fireTableDataChanged();
+        });
+        JButton save = new JButton("Save to File...");
+        save.addActionListener(e -> actionSaveMetrics());
+        controls.add(reset);
+        controls.add(save);
+        controls.add(new JLabel("Column storage: " + ColumnBackend.selected() + " (-Dcbs.columns). Timestamp parsing is estimated"
+                + " from a sample; JFR events are in category \"CDR Billing\"."));
+
+        JTable metricsTable = new JTable(metricsModel);
+        metricsTable.setFillsViewportHeight(true);
+        metricsTable.setRowHeight(24);
+        DefaultTableCellRenderer r = new DefaultTableCellRenderer();
+        r.setHorizontalAlignment(SwingConstants.RIGHT);
+        for (int c = 1; c < metricsModel.getColumnCount(); c++) metricsTable.getColumnModel().getColumn(c).setCellRenderer(r);
+        metricsTable.getColumnModel().getColumn(0).setPreferredWidth(260);
+
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(controls, BorderLayout.NORTH);
+        panel.add(new JScrollPane(metricsTable), BorderLayout.CENTER);
+        return panel;
+    }
+
+    private void actionSaveMetrics() {
+        JFileChooser fc = new JFileChooser();
+        fc.setDialogTitle("Save metrics");
+        fc.setSelectedFile(new File("cbs-metrics.txt"));
+        if (fc.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        try {
+            Metrics.dump(fc.getSelectedFile().toPath());
+            updateStatus("Metrics saved to " + fc.getSelectedFile().getName());
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, "Saving metrics failed: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    // Posts a marker to the EDT every 100 ms, one at a time, and records how late it runs
+    private void startEdtWatchdog() {
+        Thread watchdog = new Thread(() -> {
+            java.util.concurrent.atomic.AtomicBoolean pending = new java.util.concurrent.atomic.AtomicBoolean();
+            while (true) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (!pending.compareAndSet(false, true)) continue;
+                long posted = System.nanoTime();
+                SwingUtilities.invokeLater(() -> {
+                    long lag = System.nanoTime() - posted;
+                    if (lag >= Metrics.EDT_STALL_NANOS) Metrics.edtStall(lag);
+                    pending.set(false);
+                });
+            }
+        }, "edt-watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+
+    // Groups a snapshot off the EDT; the report keeps reading labels from that snapshot
+    private void actionRunReport() {
+        tabs.setSelectedIndex(1);
+        if (store.isEmpty()) {
+            updateStatus("No records to report on.");
+            return;
+        }
+        CdrStore snap = store.snapshot();
+        Aggregator.GroupBy by = (Aggregator.GroupBy) reportGroupBy.getSelectedItem();
+        int top = (Integer) reportTopN.getValue();
+        updateStatus(String.format("Grouping %,d records by %s...", snap.size(), by));
+        new SwingWorker<Aggregator.Report, Void>() {
+            @Override
+            protected Aggregator.Report doInBackground() {
+                return Aggregator.aggregate(snap, by);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    Aggregator.Report report = get();
+                    reportModel.show(report, top);
+                    updateStatus(String.format("%,d %s group(s) from %,d records in %.0f ms", report.size(), by,
+                            snap.size(), report.nanos / 1e6));
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (java.util.concurrent.ExecutionException ex) {
+                    JOptionPane.showMessageDialog(CallBillingSystemEmbeddedIcons.this, "Report failed: " + ex.getCause(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
     private void updateStatus(String s) {
         statusLabel.setText(s);
     }
@@ -345,129 +615,584 @@ public class CallBillingSystemEmbeddedIcons extends JFrame {
         int res = fc.showOpenDialog(this);
         if (res != JFileChooser.APPROVE_OPTION) return;
         File f = fc.getSelectedFile();
-        loadFromFile(f);
-    }
-
-    private void loadFromFile(File file) {
-        List<CDR> temp = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
-            String line;
-            int ln = 0;
-            while ((line = br.readLine()) != null) {
-                ln++;
-                if (line.trim().isEmpty()) continue;
-                String[] parts = line.split(",", -1);
-                if (parts.length < 5) continue;
-                String callID = parts[0].trim();
-                String sender = parts[1].trim();
-                String receiver = parts[2].trim();
-                String timestamp = parts[3].trim();
-                long duration = 0L;
-                try { duration = Long.parseLong(parts[4].trim()); } catch (Exception ignored) {}
-                timestamp = normalizeTimestamp(timestamp);
-                temp.add(new CDR(callID, sender, receiver, timestamp, duration));
-            }
-            cdrList.clear();
-            cdrList.addAll(temp);
-            refreshTable();
-            updateStatus("Loaded " + cdrList.size() + " records from " + file.getName());
+        loadFromFile(f, false);
+    }
+
+    // A directory loads every CDR file in it; several selected files load together
+    private void actionLoadMany() {
+        JFileChooser fc = new JFileChooser();
+        fc.setDialogTitle("Select a directory or several CDR files");
+        fc.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        fc.setMultiSelectionEnabled(true);
+        if (fc.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        File[] selected = fc.getSelectedFiles();
+        List<java.nio.file.Path> files = new ArrayList<>();
+        try {
+            for (File f : selected) files.addAll(MultiFileLoader.resolve(f.getPath()));
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, "Failed to list files: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        loadFiles(files, selected.length == 1 ? selected[0].getName() : selected.length + " selections");
+    }
+
+    private void actionLoadGlob() {
+        String pattern = JOptionPane.showInputDialog(this, "Files to load, e.g. /data/cdr/2024-06-01/*.csv:");
+        if (pattern == null || pattern.trim().isEmpty()) return;
+        try {
+            loadFiles(MultiFileLoader.resolve(pattern.trim()), pattern.trim());
+        } catch (IOException | RuntimeException ex) {
+            JOptionPane.showMessageDialog(this, "Failed to list files: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    // Replaces the dataset with the records of all files; a Call ID seen in an earlier file is dropped
+    private void loadFiles(List<java.nio.file.Path> files, String source) {
+        if (files.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "No CDR files found in " + source, "Load", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        if (files.size() == 1) {
+            loadFromFile(files.get(0).toFile(), false);
+            return;
+        }
+        if (backgroundTaskRunning("Load")) return;
+        stopFollowing();
+        CdrStore target = new CdrStore(ColumnBackend.selected());
+        target.indexCallIds();
+        store = target.snapshot();
+        searchMatches = null;
+        refreshTable();
+        loadProgress.setValue(0);
+        loadProgress.setString("Opening " + files.size() + " files");
+        progressPanel.setVisible(true);
+        updateStatus("Loading " + files.size() + " files from " + source + "...");
+        MultiLoadWorker worker = new MultiLoadWorker(files, source, target);
+        loadWorker = worker;
+        worker.showProgressDialog();
+        worker.execute();
+    }
+
+    private void actionFollow() {
+        JFileChooser fc = new JFileChooser();
+        fc.setDialogTitle("Select CDR file to follow");
+        if (fc.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        loadFromFile(fc.getSelectedFile(), true);
+    }
+
+    // With follow set, the file is loaded up to its last complete line and then polled for appended lines
+    private void loadFromFile(File file, boolean follow) {
+        if (backgroundTaskRunning("Load")) return;
+        stopFollowing();
+        try {
+            if (CdrSnapshot.isSnapshot(file.toPath())) {
+                openSnapshot(file);
+                return;
+            }
         } catch (IOException ex) {
             JOptionPane.showMessageDialog(this, "Failed to read file: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
         }
+        CdrStore target = new CdrStore(ColumnBackend.selected());
+        target.indexCallIds();
+        store = target.snapshot();
+        searchMatches = null;
+        refreshTable();
+        loadProgress.setValue(0);
+        loadProgress.setString("Opening " + file.getName());
+        progressPanel.setVisible(true);
+        updateStatus("Loading " + file.getName() + "...");
+        loadWorker = new LoadWorker(file, target, follow);
+        loadWorker.execute();
     }
 
-    private String normalizeTimestamp(String ts) {
-        for (DateTimeFormatter f : acceptedDateFormats) {
+    private void startFollowing(File file, CdrStore target, long offset, long lines) {
+        CdrTailer tailer = new CdrTailer(file.toPath(), offset, lines);
+        QuarantineWriter quarantine = new QuarantineWriter(quarantineFile(file), true);
+        followQuarantine = quarantine;
+        stopFollowItem.setEnabled(true);
+        followTask = followExecutor.scheduleWithFixedDelay(() -> {
             try {
-                LocalDateTime dt = LocalDateTime.parse(ts, f);
-                return dt.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-            } catch (Exception ignored) {}
+                CdrStore chunk = new CdrStore();
+                long rows = tailer.poll(chunk, quarantine);
+                quarantine.flush();
+                if (rows == CdrTailer.TRUNCATED) SwingUtilities.invokeLater(() -> followTruncated(file, target));
+                else if (rows > 0) SwingUtilities.invokeLater(() -> appendFollowed(file, target, chunk));
+            } catch (IOException | RuntimeException ex) {
+                SwingUtilities.invokeLater(() -> {
+                    if (store != target) return;
+                    stopFollowing();
+                    updateStatus("Stopped following " + file.getName() + ": " + ex.getMessage());
+                });
+                // an exception ends the fixed-delay schedule, so no further polls run
+                throw new java.util.concurrent.CancellationException(ex.getMessage());
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    private void stopFollowing() {
+        if (followTask != null) followTask.cancel(false);
+        followTask = null;
+        stopFollowItem.setEnabled(false);
+        QuarantineWriter quarantine = followQuarantine;
+        followQuarantine = null;
+        if (quarantine == null) return;
+        // queued behind a poll that may still be running, and no poll follows it
+        followExecutor.execute(() -> {
+            try {
+                quarantine.close();
+            } catch (IOException ex) {
+                SwingUtilities.invokeLater(() -> updateStatus("Could not write " + quarantine.file() + ": " + ex.getMessage()));
+            }
+        });
+    }
+
+    // New rows are rated with the current tariff before they join the store, so the charges stay complete
+    private void appendFollowed(File file, CdrStore target, CdrStore chunk) {
+        if (store != target || followTask == null) return;
+        int first = store.size();
+        if (tariff != null && store.isRated()) chunk.setCharges(RatingEngine.rate(chunk, tariff));
+        long t0 = System.nanoTime();
+        store.appendAll(chunk);
+        tableModel.fireTableRowsInserted(first, store.size() - 1);
+        Metrics.LOAD_TABLE_REFRESH.since(t0);
+        if (!searchField.getText().trim().isEmpty()) searchDebounce.restart();
+        refilterLater();
+        updateStatus(String.format("Following %s – %,d new record(s), %,d total", file.getName(), chunk.size(), store.size()));
+    }
+
+    // A shorter file was rotated or rewritten: start over rather than show a mix of old and new rows
+    private void followTruncated(File file, CdrStore target) {
+        if (store != target || followTask == null) return;
+        stopFollowing();
+        loadFromFile(file, true);
+    }
+
+    // Snapshots need no parsing: the columns are mapped and copied in one go, off the EDT all the same
+    private void openSnapshot(File file) {
+        CdrStore replaced = store;
+        long t0 = System.nanoTime();
+        updateStatus("Opening snapshot " + file.getName() + "...");
+        new SwingWorker<CdrStore, Void>() {
+            @Override
+            protected CdrStore doInBackground() throws IOException {
+                return CdrSnapshot.read(file.toPath());
+            }
+
+            @Override
+            protected void done() {
+                if (store != replaced) return;
+                try {
+                    store = get();
+                    searchMatches = null;
+                    refreshTable();
+                    updateStatus(String.format("Opened snapshot %s – %,d records in %d ms", file.getName(), store.size(),
+                            (System.nanoTime() - t0) / 1_000_000));
+                    refilterLater();
+                    rateStore();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (java.util.concurrent.ExecutionException ex) {
+                    updateStatus("Failed to open snapshot " + file.getName());
+                    JOptionPane.showMessageDialog(CallBillingSystemEmbeddedIcons.this, "Failed to read file: " + ex.getCause().getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    private void actionSaveSnapshot() {
+        if (store.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "No records to save.", "Save Snapshot", JOptionPane.INFORMATION_MESSAGE);
+            return;
         }
-        return ts;
+        JFileChooser fc = new JFileChooser();
+        fc.setDialogTitle("Save snapshot");
+        fc.setSelectedFile(new File("cdrs.cdrsnap"));
+        if (fc.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        File out = fc.getSelectedFile();
+        CdrStore snap = store.snapshot();
+        long t0 = System.nanoTime();
+        updateStatus("Saving snapshot of " + snap.size() + " records...");
+        new SwingWorker<Long, Void>() {
+            @Override
+            protected Long doInBackground() throws IOException {
+                return CdrSnapshot.write(snap, out.toPath());
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    long bytes = get();
+                    updateStatus(String.format("Saved snapshot %s – %,d records, %.1f MB in %d ms", out.getName(), snap.size(),
+                            bytes / 1048576.0, (System.nanoTime() - t0) / 1_000_000));
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (java.util.concurrent.ExecutionException ex) {
+                    JOptionPane.showMessageDialog(CallBillingSystemEmbeddedIcons.this, "Saving snapshot failed: " + ex.getCause().getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
     }
 
-    private void refreshTable() {
-        tableModel.setRowCount(0);
-        for (CDR c : cdrList) {
-            tableModel.addRow(new Object[]{c.callID, c.sender, c.receiver, c.timestamp, c.duration});
+    // Loads and exports share the progress bar, so only one of them runs at a time
+    private boolean loading() {
+        return loadWorker != null && !loadWorker.isDone();
+    }
+
+    private boolean backgroundTaskRunning(String title) {
+        boolean loading = loading();
+        if (!loading && (exportWorker == null || exportWorker.isDone())) return false;
+        JOptionPane.showMessageDialog(this, loading ? "A load is already running." : "An export is already running.",
+                title, JOptionPane.INFORMATION_MESSAGE);
+        return true;
+    }
+
+    private static String formatDuration(long seconds) {
+        return seconds >= 3600 ? String.format("%dh %02dm", seconds / 3600, seconds / 60 % 60)
+                : String.format("%dm %02ds", seconds / 60, seconds % 60);
+    }
+
+    private void actionIngestThreads() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        String v = JOptionPane.showInputDialog(this, "Maximum threads used to parse a file (1-" + cores + "):", ingestThreads);
+        if (v == null) return;
+        try {
+            int n = Integer.parseInt(v.trim());
+            if (n < 1) throw new NumberFormatException();
+            ingestThreads = Math.min(n, cores);
+            updateStatus("Ingest threads: " + ingestThreads);
+        } catch (NumberFormatException ex) {
+            JOptionPane.showMessageDialog(this, "Enter a whole number of at least 1.", "Ingest Threads", JOptionPane.WARNING_MESSAGE);
         }
     }
 
+    private void refreshTable() {
+        tableModel.fireTableDataChanged();
+    }
+
     private void actionSortByDuration() {
-        if (cdrList.size() < 2) {
+        sortBy(CdrSorter.Key.DURATION, false, null, false);
+    }
+
+    private void sortBy(CdrSorter.Key primary, boolean primaryDesc, CdrSorter.Key secondary, boolean secondaryDesc) {
+        if (store.size() < 2) {
             updateStatus("Not enough records to sort.");
             return;
         }
-        for (int i = 0; i < cdrList.size() - 1; i++) {
-            int min = i;
-            for (int j = i + 1; j < cdrList.size(); j++) {
-                if (cdrList.get(j).duration < cdrList.get(min).duration) min = j;
-            }
-            if (min != i) Collections.swap(cdrList, i, min);
+        // the table shows snapshots of a store the loader is still appending to; a display order set on
+        // one would be lost with the next
+        if (loading()) {
+            updateStatus("Sort once the load has finished.");
+            return;
         }
-        refreshTable();
-        updateStatus("Selection sort by duration completed.");
+        String by = primary + (primaryDesc ? " (desc)" : " (asc)")
+                + (secondary != null && secondary != primary ? ", then " + secondary + (secondaryDesc ? " (desc)" : " (asc)") : "");
+        int seq = ++menuSortSeq;
+        CdrStore live = store;
+        CdrStore snap = live.snapshot();
+        updateStatus(String.format("Sorting %,d records by %s...", snap.size(), by));
+        sortExecutor.submit(() -> {
+            long t0 = System.nanoTime();
+            int[] perm = CdrSorter.sort(snap, primary, primaryDesc, secondary, secondaryDesc);
+            long sortMs = (System.nanoTime() - t0) / 1_000_000;
+            SwingUtilities.invokeLater(() -> {
+                if (seq != menuSortSeq || live != store) return;
+                // records appended while sorting follow the sorted ones in load order
+                int[] order = Arrays.copyOf(perm, store.size());
+                for (int r = perm.length; r < order.length; r++) order[r] = r;
+                store.setOrder(order);
+                if (table.getRowSorter() != null) table.getRowSorter().setSortKeys(null);
+                refreshTable();
+                updateStatus(String.format("Sorted %,d records by %s in %d ms", perm.length, by, sortMs));
+            });
+        });
     }
 
-    private void actionLinearSearchDialog() {
-        String q = JOptionPane.showInputDialog(this, "Enter Call ID (Linear Search):");
+    private void actionCustomSortDialog() {
+        JComboBox<CdrSorter.Key> primary = new JComboBox<>(CdrSorter.Key.values());
+        JComboBox<Object> secondary = new JComboBox<>();
+        secondary.addItem("(none)");
+        for (CdrSorter.Key k : CdrSorter.Key.values()) secondary.addItem(k);
+        JCheckBox primaryDesc = new JCheckBox("Descending");
+        JCheckBox secondaryDesc = new JCheckBox("Descending");
+        JPanel p = new JPanel(new GridLayout(2, 3, 8, 6));
+        p.add(new JLabel("Sort by:"));
+        p.add(primary);
+        p.add(primaryDesc);
+        p.add(new JLabel("Then by:"));
+        p.add(secondary);
+        p.add(secondaryDesc);
+        int res = JOptionPane.showConfirmDialog(this, p, "Sort Records", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (res != JOptionPane.OK_OPTION) return;
+        Object then = secondary.getSelectedItem();
+        sortBy((CdrSorter.Key) primary.getSelectedItem(), primaryDesc.isSelected(),
+                then instanceof CdrSorter.Key ? (CdrSorter.Key) then : null, secondaryDesc.isSelected());
+    }
+
+    private void actionFindDialog() {
+        String q = JOptionPane.showInputDialog(this, "Enter Call ID:");
         if (q == null || q.trim().isEmpty()) return;
-        int idx = linearSearchIndex(q.trim());
+        int idx = store.indexOfCallId(q.trim());
         if (idx >= 0) {
-            int viewRow = table.convertRowIndexToView(idx);
-            table.getSelectionModel().setSelectionInterval(viewRow, viewRow);
-            table.scrollRectToVisible(table.getCellRect(viewRow, 0, true));
-            showCDRDetails(cdrList.get(idx));
-            updateStatus("Linear search: found " + q);
+            selectModelRow(store.position(idx));
+            showCDRDetails(idx);
+            updateStatus("Found: " + q);
         } else {
             JOptionPane.showMessageDialog(this, "No CDR found with Call ID: " + q, "Not found", JOptionPane.WARNING_MESSAGE);
-            updateStatus("Linear search: not found " + q);
+            updateStatus("Not found: " + q);
         }
     }
 
-    private void actionBinarySearchDialog() {
-        String q = JOptionPane.showInputDialog(this, "Enter Call ID (Binary Search):");
-        if (q == null || q.trim().isEmpty()) return;
-        Optional<CDR> res = binarySearchByCallID(q.trim());
-        if (res.isPresent()) {
-            CDR found = res.get();
-            for (int i = 0; i < cdrList.size(); i++) {
-                if (cdrList.get(i).callID.equalsIgnoreCase(found.callID)) {
-                    int viewRow = table.convertRowIndexToView(i);
-                    table.getSelectionModel().setSelectionInterval(viewRow, viewRow);
-                    table.scrollRectToVisible(table.getCellRect(viewRow, 0, true));
-                    break;
-                }
+    private void runPrefixSearch() {
+        String q = searchField.getText().trim();
+        int seq = ++searchSeq;
+        if (q.isEmpty()) {
+            searchMatches = null;
+            table.clearSelection();
+            table.repaint();
+            updateStatus(String.format("%d records", store.size()));
+            return;
+        }
+        CdrStore live = store;
+        CdrStore snap = live.snapshot();
+        searchExecutor.submit(() -> {
+            // Rebuild when the dataset changed or too many rows arrived since the last build
+            if (!live.sameDataset(prefixIndexedStore) || snap.size() - prefixIndex.coverage() > Math.max(50_000, prefixIndex.coverage() / 4)) {
+                prefixIndex = PrefixIndex.build(snap);
+                prefixIndexedStore = live;
             }
-            showCDRDetails(found);
-            updateStatus("Binary search: found " + q);
-        } else {
-            JOptionPane.showMessageDialog(this, "No CDR found with Call ID: " + q, "Not found", JOptionPane.WARNING_MESSAGE);
-            updateStatus("Binary search: not found " + q);
+            BitSet hits = prefixIndex.match(q, snap);
+            int first = -1;
+            for (int r = hits.nextSetBit(0); r >= 0; r = hits.nextSetBit(r + 1)) {
+                int p = snap.position(r);
+                if (first < 0 || p < first) first = p;
+            }
+            int firstPos = first;
+            SwingUtilities.invokeLater(() -> showPrefixMatches(seq, live, q, hits, firstPos));
+        });
+    }
+
+    private void showPrefixMatches(int seq, CdrStore searched, String q, BitSet hits, int firstPos) {
+        if (seq != searchSeq || !store.sameDataset(searched)) return;
+        searchMatches = hits;
+        table.repaint();
+        int count = hits.cardinality();
+        if (count == 0) {
+            table.clearSelection();
+            updateStatus("No match: " + q);
+            return;
         }
+        selectModelRow(firstPos);
+        updateStatus(String.format("%,d match%s for \"%s\"", count, count == 1 ? "" : "es", q));
     }
 
-    private int linearSearchIndex(String callID) {
-        for (int i = 0; i < cdrList.size(); i++) if (cdrList.get(i).callID.equalsIgnoreCase(callID)) return i;
-        return -1;
+    private JPanel buildFilterBar() {
+        JPanel bar = new JPanel(new FlowLayout(FlowLayout.LEFT, 6, 2));
+        bar.add(new JLabel("Filter:"));
+        filterField.setToolTipText("<html>e.g. <tt>sender = 260971234567 and duration &gt; 10m and date = yesterday</tt><br>"
+                + "Fields: callid, sender, receiver, number, duration, time, date, charge; * ends a prefix<br>"
+                + "Operators: = != &lt; &lt;= &gt; &gt;=, combined with and, or, not and parentheses</html>");
+        filterField.addActionListener(e -> applyFilter());
+        JButton apply = new JButton("Apply");
+        apply.addActionListener(e -> applyFilter());
+        JButton clear = new JButton("Clear");
+        clear.addActionListener(e -> {
+            filterField.setText("");
+            applyFilter();
+        });
+        bar.add(filterField);
+        bar.add(apply);
+        bar.add(clear);
+        return bar;
     }
 
-    private Optional<CDR> binarySearchByCallID(String callID) {
-        if (cdrList.isEmpty()) return Optional.empty();
-        List<CDR> copy = new ArrayList<>(cdrList);
-        copy.sort(Comparator.comparing(c -> c.callID.toLowerCase()));
-        int l = 0, r = copy.size() - 1;
-        while (l <= r) {
-            int m = (l + r) >>> 1;
-            int cmp = copy.get(m).callID.compareToIgnoreCase(callID);
-            if (cmp == 0) return Optional.of(copy.get(m));
-            if (cmp < 0) l = m + 1; else r = m - 1;
+    private void applyFilter() {
+        String text = filterField.getText().trim();
+        filterField.setForeground(searchField.getForeground());
+        if (text.isEmpty()) {
+            filterSeq++;
+            activeFilter = null;
+            filteredStore = null;
+            filterHits = null;
+            rowSorter.setFilter(null);
+            updateStatus(String.format("%,d records", store.size()));
+            return;
+        }
+        try {
+            activeFilter = RecordFilter.parse(text);
+        } catch (IllegalArgumentException ex) {
+            filterField.setForeground(new Color(200, 40, 40));
+            updateStatus("Filter: " + ex.getMessage());
+            return;
         }
-        return Optional.empty();
+        runFilter(activeFilter, false);
+    }
+
+    // A quiet run refreshes the matches after the data changed without touching the status bar
+    private void runFilter(RecordFilter filter, boolean quiet) {
+        int seq = ++filterSeq;
+        CdrStore live = store;
+        CdrStore snap = live.snapshot();
+        if (!quiet) updateStatus(String.format("Filtering %,d records...", snap.size()));
+        searchExecutor.submit(() -> {
+            long t0 = System.nanoTime();
+            BitSet hits = filter.match(snap);
+            long ms = (System.nanoTime() - t0) / 1_000_000;
+            SwingUtilities.invokeLater(() -> {
+                if (seq != filterSeq || !store.sameDataset(live)) return;
+                filteredStore = live;
+                filterHits = hits;
+                filterCoverage = snap.size();
+                rowSorter.setFilter(recordFilter);
+                if (!quiet) updateStatus(String.format("Filter: %,d of %,d records match in %d ms", table.getRowCount(), store.size(), ms));
+            });
+        });
+    }
+
+    private void refilterLater() {
+        if (activeFilter != null) filterRefresh.restart();
+    }
+
+    private void actionTimeRangeDialog() {
+        if (timeRangeDialog == null) timeRangeDialog = buildTimeRangeDialog();
+        timeRangeDialog.setVisible(true);
+        timeRangeDialog.toFront();
+    }
+
+    private JDialog buildTimeRangeDialog() {
+        JTextField from = new JTextField(16);
+        JTextField to = new JTextField(16);
+        JTextField sender = new JTextField(14);
+        JButton run = new JButton("Search");
+        run.addActionListener(e -> runTimeRangeSearch(from.getText(), to.getText(), sender.getText()));
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT, 8, 4));
+        controls.add(new JLabel("From:"));
+        controls.add(from);
+        controls.add(new JLabel("To:"));
+        controls.add(to);
+        controls.add(new JLabel("Sender (optional):"));
+        controls.add(sender);
+        controls.add(run);
+
+        JTable results = new JTable(rangeModel);
+        results.setFillsViewportHeight(true);
+        results.setRowHeight(24);
+        results.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int row = results.getSelectedRow();
+                if (e.getClickCount() != 2 || row < 0 || !store.sameDataset(rangeModel.searched)) return;
+                int record = rangeModel.record(row);
+                selectModelRow(store.position(record));
+                showCDRDetails(record);
+            }
+        });
+
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(controls, BorderLayout.NORTH);
+        panel.add(new JScrollPane(results), BorderLayout.CENTER);
+        rangeStatus.setBorder(new EmptyBorder(4, 8, 4, 8));
+        panel.add(rangeStatus, BorderLayout.SOUTH);
+        JDialog d = new JDialog(this, "Calls in a Time Range", false);
+        d.setContentPane(panel);
+        d.getRootPane().setDefaultButton(run);
+        d.setSize(900, 520);
+        d.setLocationRelativeTo(this);
+        return d;
+    }
+
+    // Both ends inclusive, in any accepted timestamp format
+    private void runTimeRangeSearch(String fromText, String toText, String senderText) {
+        long from = Timestamps.parse(fromText), to = Timestamps.parse(toText);
+        if (from == Timestamps.INVALID || to == Timestamps.INVALID) {
+            JOptionPane.showMessageDialog(timeRangeDialog, "Enter both times as yyyy-MM-dd HH:mm:ss", "Time Range",
+                    JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        String sender = senderText.trim();
+        int seq = ++rangeSeq;
+        CdrStore live = store;
+        CdrStore snap = live.snapshot();
+        // Resolved against the live dictionary: a snapshot's has no hash table and would rebuild one per query
+        int code = sender.isEmpty() ? -1 : live.numbers().find(sender);
+        rangeStatus.setText("Searching...");
+        searchExecutor.submit(() -> {
+            if (!live.sameDataset(timeIndexedStore) || snap.size() - timeIndex.coverage() > Math.max(50_000, timeIndex.coverage() / 4)) {
+                timeIndex = TimeRangeIndex.build(snap);
+                timeIndexedStore = live;
+            }
+            long t0 = System.nanoTime();
+            int[] hits = code < 0 && !sender.isEmpty() ? new int[0] : timeIndex.find(from, to, code, snap);
+            long micros = (System.nanoTime() - t0) / 1000;
+            SwingUtilities.invokeLater(() -> {
+                if (seq != rangeSeq) return;
+                rangeModel.show(live, snap, hits);
+                rangeStatus.setText(String.format("%,d call(s) between %s and %s%s in %,d µs – double-click a row to show it",
+                        hits.length, Timestamps.format(from), Timestamps.format(to), sender.isEmpty() ? "" : " from " + sender, micros));
+            });
+        });
+    }
+
+    private void selectModelRow(int modelRow) {
+        int viewRow = table.convertRowIndexToView(modelRow);
+        table.getSelectionModel().setSelectionInterval(viewRow, viewRow);
+        table.scrollRectToVisible(table.getCellRect(viewRow, 0, true));
+    }
+
+    private void actionRate() {
+        JFileChooser fc = new JFileChooser();
+        fc.setDialogTitle("Select tariff file");
+        if (fc.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        try {
+            tariff = Tariff.load(fc.getSelectedFile().toPath());
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, "Invalid tariff: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        rateStore();
+    }
+
+    // Rates a snapshot off the EDT and installs the charges if the dataset is still the one rated
+    private void rateStore() {
+        if (tariff == null || store.isEmpty()) return;
+        if (loading()) {
+            // the load rates everything with the current tariff when it finishes
+            updateStatus("Records will be rated with " + tariff.name() + " when the load finishes.");
+            return;
+        }
+        CdrStore rated = store;
+        CdrStore snap = rated.snapshot();
+        Tariff t = tariff;
+        updateStatus("Rating " + snap.size() + " records with " + t.name() + "...");
+        new SwingWorker<RatingEngine.Result, Void>() {
+            @Override
+            protected RatingEngine.Result doInBackground() {
+                return RatingEngine.rate(snap, t);
+            }
+
+            @Override
+            protected void done() {
+                if (rated != store) return;
+                try {
+                    RatingEngine.Result result = get();
+                    store.setCharges(result);
+                    if (!store.isEmpty()) tableModel.fireTableRowsUpdated(0, store.size() - 1);
+                    refilterLater();
+                    updateStatus("Tariff " + t.name() + ": " + result);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (java.util.concurrent.ExecutionException ex) {
+                    JOptionPane.showMessageDialog(CallBillingSystemEmbeddedIcons.this, "Rating failed: " + ex.getCause(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
     }
 
     private void actionExportCSV() {
-        if (cdrList.isEmpty()) {
+        if (store.isEmpty()) {
             JOptionPane.showMessageDialog(this, "No records to export.", "Export", JOptionPane.INFORMATION_MESSAGE);
             return;
         }
@@ -476,32 +1201,19 @@ public class CallBillingSystemEmbeddedIcons extends JFrame {
         int res = fc.showSaveDialog(this);
         if (res != JFileChooser.APPROVE_OPTION) return;
         File out = fc.getSelectedFile();
-        try (PrintWriter pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(out), StandardCharsets.UTF_8))) {
-            pw.println("CallID,Sender,Receiver,Timestamp,Duration");
-            for (CDR c : cdrList) {
-                pw.printf("%s,%s,%s,%s,%d%n",
-                        csvQuote(c.callID),
-                        csvQuote(c.sender),
-                        csvQuote(c.receiver),
-                        csvQuote(c.timestamp),
-                        c.duration);
-            }
-            updateStatus("Exported " + cdrList.size() + " records to " + out.getName());
-            JOptionPane.showMessageDialog(this, "Export successful: " + out.getAbsolutePath(), "Export", JOptionPane.INFORMATION_MESSAGE);
-        } catch (IOException ex) {
-            JOptionPane.showMessageDialog(this, "Export failed: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-        }
-    }
-
-    private String csvQuote(String s) {
-        if (s == null) return "";
-        if (s.contains(",") || s.contains("\"") || s.contains("\n")) return "\"" + s.replace("\"", "\"\"") + "\"";
-        return s;
+        if (backgroundTaskRunning("Export")) return;
+        loadProgress.setValue(0);
+        loadProgress.setString("Exporting to " + out.getName());
+        progressPanel.setVisible(true);
+        updateStatus("Exporting " + store.size() + " records to " + out.getName() + "...");
+        exportWorker = new ExportWorker(out, store.snapshot());
+        exportWorker.execute();
     }
 
-    private void showCDRDetails(CDR c) {
+    private void showCDRDetails(int row) {
         String msg = String.format("Call ID: %s%nSender: %s%nReceiver: %s%nTimestamp: %s%nDuration: %d ms",
-                c.callID, c.sender, c.receiver, c.timestamp, c.duration);
+                store.callID(row), store.sender(row), store.receiver(row), store.timestamp(row), store.duration(row));
+        if (store.charge(row) != CdrStore.UNRATED) msg += String.format("%nCharge: %s", Tariff.formatAmount(store.charge(row)));
         JOptionPane.showMessageDialog(this, msg, "CDR Details", JOptionPane.INFORMATION_MESSAGE);
     }
 
@@ -602,14 +1314,635 @@ public class CallBillingSystemEmbeddedIcons extends JFrame {
         } catch (Exception ignored) {}
     }
 
-    private static class CDR {
-        final String callID;
-        final String sender;
-        final String receiver;
-        final String timestamp;
-        final long duration;
-        CDR(String callID, String sender, String receiver, String timestamp, long duration) {
-            this.callID = callID; this.sender = sender; this.receiver = receiver; this.timestamp = timestamp; this.duration = duration;
+    // Rejected and suspicious lines of a CDR file are written next to it
+    private static java.nio.file.Path quarantineFile(File file) {
+        return file.toPath().resolveSibling(file.getName() + ".rejects.csv");
+    }
+
+    // Per-category counts after a load that quarantined anything; the lines themselves are in the file
+    private void showRejectSummary(CdrLoader.Stats stats, String source, String written, String quarantineError) {
+        StringBuilder sb = new StringBuilder();
+        for (RejectReason reason : RejectReason.values()) {
+            long n = stats.count(reason);
+            if (n > 0) sb.append(String.format("%s: %,d%s%n", reason.label, n, reason.rejected ? " line(s) skipped" : " row(s) loaded"));
+        }
+        if (sb.length() == 0) return;
+        sb.append('\n').append(quarantineError == null
+                ? "Lines with their line numbers were written to\n" + written
+                : "The quarantine file could not be written: " + quarantineError);
+        JOptionPane.showMessageDialog(this, sb.toString(), "Load of " + source + " – Quarantined Lines",
+                quarantineError == null ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE);
+    }
+
+    // Parses and appends off the EDT, publishing a snapshot after each chunk. The EDT only ever holds
+    // snapshots until done(), so searches and sorts, which start there, always see whole chunks.
+    private class LoadWorker extends SwingWorker<CdrLoader.Stats, CdrStore> {
+        private final File file;
+        private final CdrStore target;
+        private final long started = System.nanoTime();
+        private final boolean follow;
+        private long rowsParsed;
+        private volatile String quarantineError;
+
+        LoadWorker(File file, CdrStore target, boolean follow) {
+            this.file = file;
+            this.target = target;
+            this.follow = follow;
+        }
+
+        @Override
+        protected CdrLoader.Stats doInBackground() throws IOException {
+            QuarantineWriter quarantine = new QuarantineWriter(quarantineFile(file));
+            try {
+                return load(quarantine);
+            } finally {
+                try {
+                    quarantine.close();
+                } catch (IOException ex) {
+                    quarantineError = ex.getMessage();
+                }
+            }
+        }
+
+        private CdrLoader.Stats load(QuarantineWriter quarantine) throws IOException {
+            return CdrLoader.load(file.toPath(), ingestThreads, CdrStore::new, (chunk, done, total) -> {
+                rowsParsed += chunk.size();
+                long t0 = System.nanoTime();
+                target.appendAll(chunk);
+                Metrics.LOAD_MERGE.since(t0);
+                publish(target.snapshot());
+                double secs = Math.max(1e-3, (System.nanoTime() - started) / 1e9);
+                int permille = total == 0 ? 1000 : (int) (done * 1000 / total);
+                String text = String.format("%.0f of %.0f MB – %,.0f rows/s – ETA %s", done / 1048576.0, total / 1048576.0,
+                        rowsParsed / secs, formatDuration((long) ((total - done) / Math.max(1.0, done / secs))));
+                SwingUtilities.invokeLater(() -> {
+                    loadProgress.setValue(permille);
+                    loadProgress.setString(text);
+                });
+            }, this::isCancelled, follow, quarantine);
+        }
+
+        @Override
+        protected void process(List<CdrStore> views) {
+            showLoaded(target, views.get(views.size() - 1));
+        }
+
+        @Override
+        protected void done() {
+            if (loadWorker != this) return;
+            progressPanel.setVisible(false);
+            if (isCancelled()) {
+                // the worker may still be finishing a chunk, so the table keeps the last snapshot
+                updateStatus(String.format("Load of %s cancelled – kept %,d records", file.getName(), store.size()));
+                return;
+            }
+            showLoaded(target, target);
+            try {
+                CdrLoader.Stats stats = get();
+                updateStatus("Loaded " + target.size() + " records from " + file.getName() + " – " + stats
+                        + " on " + ingestThreads + " thread(s)"
+                        + (stats.rejected > 0 ? ", " + stats.rejected + " malformed line(s) skipped" : "")
+                        + (stats.badTimestamps > 0 ? ", " + stats.badTimestamps + " unrecognised timestamp(s)" : ""));
+                refilterLater();
+                rateStore();
+                if (follow) startFollowing(file, target, stats.bytes, stats.lines);
+                showRejectSummary(stats, file.getName(), quarantineFile(file).toString(), quarantineError);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (java.util.concurrent.ExecutionException ex) {
+                updateStatus(String.format("Load of %s failed after %,d records", file.getName(), target.size()));
+                JOptionPane.showMessageDialog(CallBillingSystemEmbeddedIcons.this, "Failed to read file: " + ex.getCause().getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    // Moves the table to a newer snapshot of the store a worker is loading into, or to that store itself
+    // once the worker has finished with it. The EDT never reads a store another thread is writing.
+    private void showLoaded(CdrStore target, CdrStore view) {
+        if (store == target || !store.sameDataset(target) || view.size() < store.size()) return;
+        long t0 = System.nanoTime();
+        int first = store.size();
+        store = view;
+        if (view.size() > first) tableModel.fireTableRowsInserted(first, view.size() - 1);
+        Metrics.LOAD_TABLE_REFRESH.since(t0);
+    }
+
+    // Loads many files at once through MultiFileLoader. Each file arrives as one store, in file order, and
+    // is appended on the worker, where Call IDs already loaded from earlier files are dropped; the EDT is
+    // handed a snapshot after each file, as in LoadWorker.
+    private class MultiLoadWorker extends SwingWorker<CdrLoader.Stats, CdrStore> {
+        private final List<java.nio.file.Path> files;
+        private final String source;
+        private final CdrStore target;
+        private final FileProgressModel progress;
+        private final long started = System.nanoTime();
+        private final javax.swing.Timer repaint;
+        private long bytesTotal;
+        private long duplicates;
+
+        MultiLoadWorker(List<java.nio.file.Path> files, String source, CdrStore target) {
+            this.files = files;
+            this.source = source;
+            this.target = target;
+            progress = new FileProgressModel(files);
+            repaint = new javax.swing.Timer(250, e -> refreshProgress());
+        }
+
+        void showProgressDialog() {
+            JTable t = new JTable(progress);
+            t.setFillsViewportHeight(true);
+            t.setRowHeight(22);
+            t.getColumnModel().getColumn(0).setPreferredWidth(320);
+            JDialog d = new JDialog(CallBillingSystemEmbeddedIcons.this, "Loading " + source, false);
+            d.setContentPane(new JScrollPane(t));
+            d.setSize(760, 420);
+            d.setLocationRelativeTo(CallBillingSystemEmbeddedIcons.this);
+            d.setVisible(true);
+            repaint.start();
+        }
+
+        @Override
+        protected CdrLoader.Stats doInBackground() throws IOException {
+            for (java.nio.file.Path f : files) bytesTotal += java.nio.file.Files.size(f);
+            return MultiFileLoader.load(files, ingestThreads, new MultiFileLoader.Listener() {
+                @Override
+                public void progress(int file, long bytesDone, long total) {
+                    progress.bytesDone.set(file, bytesDone);
+                }
+
+                // Throws IllegalStateException once there are too many Call IDs to skip duplicates,
+                // which ends the load and is reported by done()
+                @Override
+                public void fileLoaded(int file, CdrStore records, CdrLoader.Stats stats) {
+                    long t0 = System.nanoTime();
+                    int dropped = target.appendAllNew(records);
+                    Metrics.LOAD_MERGE.since(t0);
+                    duplicates += dropped;
+                    progress.stats[file] = stats;
+                    progress.fileAppended(records.size(), dropped);
+                    publish(target.snapshot());
+                }
+            }, this::isCancelled, f -> quarantineFile(f.toFile()));
+        }
+
+        @Override
+        protected void process(List<CdrStore> views) {
+            showLoaded(target, views.get(views.size() - 1));
+        }
+
+        private void refreshProgress() {
+            long done = progress.bytesDone();
+            double secs = Math.max(1e-3, (System.nanoTime() - started) / 1e9);
+            loadProgress.setValue(bytesTotal == 0 ? 0 : (int) (done * 1000 / bytesTotal));
+            loadProgress.setString(String.format("%d of %d files – %.0f of %.0f MB – %,.0f rows/s", progress.appended,
+                    files.size(), done / 1048576.0, bytesTotal / 1048576.0, store.size() / secs));
+            progress.fireTableRowsUpdated(0, files.size() - 1);
+        }
+
+        @Override
+        protected void done() {
+            repaint.stop();
+            refreshProgress();
+            if (loadWorker != this) return;
+            progressPanel.setVisible(false);
+            if (isCancelled()) {
+                updateStatus(String.format("Load of %s cancelled – kept %,d records", source, store.size()));
+                return;
+            }
+            showLoaded(target, target);
+            try {
+                CdrLoader.Stats stats = get();
+                updateStatus(String.format("Loaded %,d records from %d files in %s – %s on %d thread(s)%s%s", target.size(),
+                        files.size(), source, stats, ingestThreads,
+                        duplicates > 0 ? String.format(", %,d duplicate Call ID(s) dropped", duplicates) : "",
+                        stats.rejected > 0 ? String.format(", %,d malformed line(s) skipped", stats.rejected) : ""));
+                refilterLater();
+                rateStore();
+                showRejectSummary(stats, source, "<file>.rejects.csv next to each file", null);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (java.util.concurrent.ExecutionException ex) {
+                updateStatus(String.format("Load of %s failed after %,d records", source, target.size()));
+                JOptionPane.showMessageDialog(CallBillingSystemEmbeddedIcons.this, "Failed to read files: " + ex.getCause().getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    // One row per file of a multi-file load. Parse progress is written by the loading threads; the
+    // record and duplicate counts by the worker as each file is appended, and read on the EDT only for
+    // rows below appended.
+    private static class FileProgressModel extends AbstractTableModel {
+        private final String[] cols = {"File", "Size (MB)", "Parsed", "Records", "Duplicates", "Rejected"};
+        private final List<java.nio.file.Path> files;
+        private final long[] sizes;
+        final java.util.concurrent.atomic.AtomicLongArray bytesDone;
+        final CdrLoader.Stats[] stats;
+        private final int[] records;
+        private final int[] duplicates;
+        volatile int appended;
+
+        FileProgressModel(List<java.nio.file.Path> files) {
+            this.files = files;
+            sizes = new long[files.size()];
+            for (int i = 0; i < sizes.length; i++) {
+                try {
+                    sizes[i] = java.nio.file.Files.size(files.get(i));
+                } catch (IOException ex) {
+                    sizes[i] = 0;
+                }
+            }
+            bytesDone = new java.util.concurrent.atomic.AtomicLongArray(sizes.length);
+            stats = new CdrLoader.Stats[sizes.length];
+            records = new int[sizes.length];
+            duplicates = new int[sizes.length];
+        }
+
+        void fileAppended(int rows, int dropped) {
+            records[appended] = rows - dropped;
+            duplicates[appended] = dropped;
+            appended++;
+        }
+
+        long bytesDone() {
+            long sum = 0;
+            for (int i = 0; i < sizes.length; i++) sum += bytesDone.get(i);
+            return sum;
+        }
+
+        @Override public int getRowCount() { return sizes.length; }
+        @Override public int getColumnCount() { return cols.length; }
+        @Override public String getColumnName(int c) { return cols[c]; }
+
+        @Override
+        public Object getValueAt(int row, int col) {
+            boolean done = row < appended;
+            CdrLoader.Stats s = stats[row];
+            switch (col) {
+                case 0: return files.get(row).getFileName().toString();
+                case 1: return String.format("%.1f", sizes[row] / 1048576.0);
+                case 2: return sizes[row] == 0 ? "" : String.format("%d%%", bytesDone.get(row) * 100 / sizes[row]);
+                case 3: return done ? String.format("%,d", records[row]) : "";
+                case 4: return done ? String.format("%,d", duplicates[row]) : "";
+                default: return s == null ? "" : String.format("%,d", s.rejected);
+            }
+        }
+    }
+
+    // Writes a snapshot, so the table stays usable and later appends or sorts don't affect the file.
+    // Names ending in .gz are compressed on the fly.
+    private class ExportWorker extends SwingWorker<Long, Void> {
+        private final File file;
+        private final CdrStore snap;
+        private final long started = System.nanoTime();
+
+        ExportWorker(File file, CdrStore snap) {
+            this.file = file;
+            this.snap = snap;
+        }
+
+        @Override
+        protected Long doInBackground() throws IOException {
+            return CsvExporter.write(snap, file.toPath(), file.getName().endsWith(".gz"), (done, total) -> {
+                int permille = (int) ((long) done * 1000 / total);
+                String text = String.format("%,d of %,d rows", done, total);
+                SwingUtilities.invokeLater(() -> {
+                    loadProgress.setValue(permille);
+                    loadProgress.setString(text);
+                });
+            }, this::isCancelled);
+        }
+
+        @Override
+        protected void done() {
+            if (exportWorker != this) return;
+            progressPanel.setVisible(false);
+            if (isCancelled()) {
+                updateStatus("Export to " + file.getName() + " cancelled");
+                return;
+            }
+            try {
+                long bytes = get();
+                double secs = Math.max(1e-3, (System.nanoTime() - started) / 1e9);
+                updateStatus(String.format("Exported %,d records to %s in %.2f s (%.1f MB/s)", snap.size(), file.getName(),
+                        secs, bytes / secs / 1048576));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (java.util.concurrent.ExecutionException ex) {
+                updateStatus("Export to " + file.getName() + " failed");
+                JOptionPane.showMessageDialog(CallBillingSystemEmbeddedIcons.this, "Export failed: " + ex.getCause().getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    // Reads cells straight from the current store in display order; nothing is copied per row
+    private class CdrTableModel extends AbstractTableModel {
+        private final String[] cols = {"Call ID", "Sender", "Receiver", "Timestamp", "Duration (ms)", "Charge"};
+
+        @Override public int getRowCount() { return store.size(); }
+        @Override public int getColumnCount() { return cols.length; }
+        @Override public String getColumnName(int c) { return cols[c]; }
+        @Override public Class<?> getColumnClass(int c) { return c == 4 ? Long.class : String.class; }
+
+        @Override
+        public Object getValueAt(int row, int col) {
+            int r = store.record(row);
+            switch (col) {
+                case 0: return store.callID(r);
+                case 1: return store.sender(r);
+                case 2: return store.receiver(r);
+                case 3: return store.timestamp(r);
+                case 4: return store.duration(r);
+                default: return store.charge(r) == CdrStore.UNRATED ? "" : Tariff.formatAmount(store.charge(r));
+            }
+        }
+    }
+
+    // Sorts and filters the Records table on display positions without reading a cell: a header click
+    // orders the positions with CdrSorter over a snapshot on the sort thread, and each column's permutation
+    // is kept until the rows it covers change. Appended rows show unsorted after it until the re-sort lands.
+    private class CdrRowSorter extends RowSorter<CdrTableModel> {
+        private static final int CHARGE_COLUMN = 5;
+        // Ascending permutations of this many columns are kept, least recently used dropped first
+        private static final int CACHED_COLUMNS = 3;
+        private final CdrSorter.Key[] columnKeys = {CdrSorter.Key.CALL_ID, CdrSorter.Key.SENDER, CdrSorter.Key.RECEIVER,
+                CdrSorter.Key.TIMESTAMP, CdrSorter.Key.DURATION, CdrSorter.Key.CHARGE};
+        private final Map<Integer, int[]> ascending = new LinkedHashMap<Integer, int[]>(8, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+                return size() > CACHED_COLUMNS;
+            }
+        };
+        // Only the sorted column's descending order is kept; it is derived from the ascending one in one pass
+        private int descendingColumn = -1;
+        private int[] descending;
+        private List<SortKey> sortKeys = Collections.emptyList();
+        private IntPredicate filter;
+        // null while every model row shows in model order
+        private int[] viewToModel;
+        private int viewCount;
+        private int[] modelToView;
+        // Bumped when cached permutations stop matching the rows; sorts started before it are dropped
+        private int generation;
+        private int sortSeq;
+        private final javax.swing.Timer resortLater = new javax.swing.Timer(500, e -> resort(true));
+
+        CdrRowSorter() {
+            resortLater.setRepeats(false);
+        }
+
+        @Override public CdrTableModel getModel() { return tableModel; }
+        @Override public List<? extends SortKey> getSortKeys() { return sortKeys; }
+        @Override public int getModelRowCount() { return tableModel.getRowCount(); }
+        @Override public int getViewRowCount() { return viewToModel == null ? getModelRowCount() : viewCount; }
+
+        @Override
+        public void toggleSortOrder(int column) {
+            boolean asc = !sortKeys.isEmpty() && sortKeys.get(0).getColumn() == column
+                    && sortKeys.get(0).getSortOrder() == SortOrder.ASCENDING;
+            setSortKeys(List.of(new SortKey(column, asc ? SortOrder.DESCENDING : SortOrder.ASCENDING)));
+        }
+
+        // Only the first key is used: a second one would need a combined permutation per pair of columns
+        @Override
+        public void setSortKeys(List<? extends SortKey> keys) {
+            List<SortKey> next = keys == null || keys.isEmpty() || keys.get(0).getSortOrder() == SortOrder.UNSORTED
+                    ? Collections.emptyList() : List.of(keys.get(0));
+            if (next.equals(sortKeys)) return;
+            sortKeys = next;
+            fireSortOrderChanged();
+            resort(false);
+        }
+
+        void setFilter(IntPredicate include) {
+            filter = include;
+            rebuild(sorted());
+        }
+
+        @Override
+        public int convertRowIndexToModel(int index) {
+            if (viewToModel == null) return index;
+            return viewToModel[Objects.checkIndex(index, viewCount)];
+        }
+
+        @Override
+        public int convertRowIndexToView(int index) {
+            if (viewToModel == null) return index;
+            if (modelToView == null) {
+                int[] m = new int[getModelRowCount()];
+                Arrays.fill(m, -1);
+                for (int v = 0; v < viewCount; v++) m[viewToModel[v]] = v;
+                modelToView = m;
+            }
+            return index < modelToView.length ? modelToView[index] : -1;
+        }
+
+        @Override
+        public void modelStructureChanged() {
+            allRowsChanged();
+        }
+
+        // A new dataset or a new display order: every cached position is stale
+        @Override
+        public void allRowsChanged() {
+            generation++;
+            ascending.clear();
+            descending = null;
+            rebuild(null);
+            if (!sortKeys.isEmpty()) resortLater.restart();
+        }
+
+        // Rows are only appended, so cached permutations still order the rows they cover
+        @Override
+        public void rowsInserted(int firstRow, int endRow) {
+            if (viewToModel != null) {
+                if (viewCount + endRow - firstRow + 1 > viewToModel.length) {
+                    viewToModel = Arrays.copyOf(viewToModel, Math.max(getModelRowCount(), viewCount + (viewCount >> 1)));
+                }
+                for (int m = firstRow; m <= endRow; m++) {
+                    if (filter == null || filter.test(m)) viewToModel[viewCount++] = m;
+                }
+                modelToView = null;
+            }
+            if (!sortKeys.isEmpty()) resortLater.restart();
+        }
+
+        @Override
+        public void rowsDeleted(int firstRow, int endRow) {
+            allRowsChanged();
+        }
+
+        // Rows are only updated in place when charges are installed
+        @Override
+        public void rowsUpdated(int firstRow, int endRow) {
+            generation++;
+            ascending.remove(CHARGE_COLUMN);
+            if (descendingColumn == CHARGE_COLUMN) descending = null;
+            if (!sortKeys.isEmpty()) resortLater.restart();
+        }
+
+        @Override
+        public void rowsUpdated(int firstRow, int endRow, int column) {
+            rowsUpdated(firstRow, endRow);
+        }
+
+        // The cached permutation for the current sort key, possibly shorter than the model; null if none
+        private int[] sorted() {
+            if (sortKeys.isEmpty()) return null;
+            int column = sortKeys.get(0).getColumn();
+            if (sortKeys.get(0).getSortOrder() == SortOrder.ASCENDING) return ascending.get(column);
+            return descendingColumn == column ? descending : null;
+        }
+
+        // A quiet re-sort follows changed data without touching the status bar
+        private void resort(boolean quiet) {
+            int[] perm = sorted();
+            if (sortKeys.isEmpty() || perm != null) rebuild(perm);
+            if (sortKeys.isEmpty() || perm != null && perm.length == getModelRowCount()) return;
+            int seq = ++sortSeq, gen = generation;
+            int column = sortKeys.get(0).getColumn();
+            boolean desc = sortKeys.get(0).getSortOrder() == SortOrder.DESCENDING;
+            CdrSorter.Key key = columnKeys[column];
+            CdrStore live = store;
+            CdrStore snap = live.snapshot();
+            int[] known = ascending.get(column);
+            int[] reuse = known != null && known.length == snap.size() ? known : null;
+            if (!quiet) updateStatus(String.format("Sorting %,d records by %s...", snap.size(), key));
+            sortExecutor.submit(() -> {
+                long t0 = System.nanoTime();
+                int[] asc = reuse != null ? reuse : CdrSorter.sortPositions(snap, key);
+                int[] dsc = desc ? CdrSorter.reversePositions(snap, key, asc) : null;
+                long ms = (System.nanoTime() - t0) / 1_000_000;
+                SwingUtilities.invokeLater(() -> {
+                    if (gen != generation || !store.sameDataset(live)) return;
+                    ascending.put(column, asc);
+                    if (dsc != null) {
+                        descendingColumn = column;
+                        descending = dsc;
+                    }
+                    if (seq != sortSeq) return;
+                    rebuild(desc ? dsc : asc);
+                    if (!quiet) updateStatus(String.format("Sorted %,d records by %s (%s) in %d ms",
+                            snap.size(), key, desc ? "desc" : "asc", ms));
+                });
+            });
+        }
+
+        // View = the sorted positions, then any appended since, keeping those the filter includes
+        private void rebuild(int[] perm) {
+            int[] last = viewToModel == null || table.getSelectionModel().isSelectionEmpty()
+                    ? null : Arrays.copyOf(viewToModel, viewCount);
+            int n = getModelRowCount();
+            if (perm == null && filter == null) {
+                viewToModel = null;
+                viewCount = n;
+            } else {
+                int[] v = new int[n];
+                int k = 0, covered = perm == null ? 0 : perm.length;
+                for (int i = 0; i < covered; i++) {
+                    if (filter == null || filter.test(perm[i])) v[k++] = perm[i];
+                }
+                for (int m = covered; m < n; m++) {
+                    if (filter == null || filter.test(m)) v[k++] = m;
+                }
+                viewToModel = v;
+                viewCount = k;
+            }
+            modelToView = null;
+            fireRowSorterChanged(last);
+        }
+    }
+
+    // Records of one time-range search, read from the snapshot it ran against
+    private static class RangeTableModel extends AbstractTableModel {
+        private final String[] cols = {"Call ID", "Sender", "Receiver", "Timestamp", "Duration (ms)", "Charge"};
+        private CdrStore searched;
+        private CdrStore snap;
+        private int[] records = new int[0];
+
+        void show(CdrStore live, CdrStore s, int[] hits) {
+            searched = live;
+            snap = s;
+            records = hits;
+            fireTableDataChanged();
+        }
+
+        int record(int row) { return records[row]; }
+
+        @Override public int getRowCount() { return records.length; }
+        @Override public int getColumnCount() { return cols.length; }
+        @Override public String getColumnName(int c) { return cols[c]; }
+        @Override public Class<?> getColumnClass(int c) { return c == 4 ? Long.class : String.class; }
+
+        @Override
+        public Object getValueAt(int row, int col) {
+            int r = records[row];
+            switch (col) {
+                case 0: return snap.callID(r);
+                case 1: return snap.sender(r);
+                case 2: return snap.receiver(r);
+                case 3: return snap.timestamp(r);
+                case 4: return snap.duration(r);
+                default: return snap.charge(r) == CdrStore.UNRATED ? "" : Tariff.formatAmount(snap.charge(r));
+            }
+        }
+    }
+
+    // Counters first, then timers; values are read from Metrics on every repaint
+    private static class MetricsTableModel extends AbstractTableModel {
+        private final String[] cols = {"Metric", "Count / Value", "Total (ms)", "Mean (ms)", "Max (ms)"};
+
+        @Override public int getRowCount() { return Metrics.counters().size() + Metrics.timers().size(); }
+        @Override public int getColumnCount() { return cols.length; }
+        @Override public String getColumnName(int c) { return cols[c]; }
+
+        @Override
+        public Object getValueAt(int row, int col) {
+            int counters = Metrics.counters().size();
+            if (row < counters) {
+                Metrics.Counter c = Metrics.counters().get(row);
+                return col == 0 ? c.name : col == 1 ? String.format("%,d", c.get()) : "";
+            }
+            Metrics.Timer t = Metrics.timers().get(row - counters);
+            switch (col) {
+                case 0: return t.name;
+                case 1: return String.format("%,d", t.count());
+                case 2: return String.format("%,.1f", t.totalNanos() / 1e6);
+                case 3: return String.format("%.3f", t.meanMillis());
+                default: return String.format("%,.1f", t.maxNanos() / 1e6);
+            }
+        }
+    }
+
+    // Top rows of an Aggregator report, busiest group first
+    private static class ReportTableModel extends AbstractTableModel {
+        private final String[] cols = {"Group", "Calls", "Total Duration (ms)", "Longest Call (ms)", "Average (ms)", "Total Charge"};
+        private Aggregator.Report report;
+        private int rows;
+
+        void show(Aggregator.Report r, int top) {
+            report = r;
+            rows = top == 0 ? r.size() : Math.min(top, r.size());
+            fireTableDataChanged();
+        }
+
+        @Override public int getRowCount() { return rows; }
+        @Override public int getColumnCount() { return cols.length; }
+        @Override public String getColumnName(int c) { return cols[c]; }
+        @Override public Class<?> getColumnClass(int c) { return c == 0 || c == 5 ? String.class : Long.class; }
+
+        @Override
+        public Object getValueAt(int row, int col) {
+            switch (col) {
+                case 0: return report.label(row);
+                case 1: return report.calls(row);
+                case 2: return report.totalDuration(row);
+                case 3: return report.maxDuration(row);
+                case 4: return report.totalDuration(row) / report.calls(row);
+                default: return report.rated() ? Tariff.formatAmount(report.totalCharge(row)) : "";
+            }
         }
     }
 
@@ -1,3 +1,5 @@
+import cities.DoublyLinkedList;
+
 import javax.swing.*;
 import javax.swing.border.*;
 import javax.swing.table.*;
@@ -10,95 +12,6 @@ import java.util.List;
 import javax.swing.Timer;
 
 public class LinkedListCitiesUI extends JFrame {
-    class Node {
-        String city;
-        Node next, prev;
-        Node(String city) { this.city = city; next = prev = null; }
-    }
-
-    class DoublyLinkedList {
-        Node head, tail;
-        int size = 0;
-
-        void insertAtBeginning(String city) {
-            Node newNode = new Node(city);
-            if (head == null) head = tail = newNode;
-            else { newNode.next = head; head.prev = newNode; head = newNode; }
-            size++;
-        }
-
-        void insertAtEnd(String city) {
-            Node newNode = new Node(city);
-            if (tail == null) head = tail = newNode;
-            else { tail.next = newNode; newNode.prev = tail; tail = newNode; }
-            size++;
-        }
-
-        boolean insertAtPosition(String city, int pos) {
-            if (pos < 1 || pos > size + 1) return false;
-            if (pos == 1) { insertAtBeginning(city); return true; }
-            if (pos == size + 1) { insertAtEnd(city); return true; }
-            Node cur = head;
-            for (int i = 1; i < pos - 1; i++) cur = cur.next;
-            Node newNode = new Node(city);
-            newNode.next = cur.next;
-            newNode.prev = cur;
-            cur.next.prev = newNode;
-            cur.next = newNode;
-            size++;
-            return true;
-        }
-
-        boolean deleteAtBeginning() {
-            if (head == null) return false;
-            if (head == tail) head = tail = null;
-            else { head = head.next; head.prev = null; }
-            size--; return true;
-        }
-
-        boolean deleteAtEnd() {
-            if (tail == null) return false;
-            if (head == tail) head = tail = null;
-            else { tail = tail.prev; tail.next = null; }
-            size--; return true;
-        }
-
-        boolean deleteAtPosition(int pos) {
-            if (pos < 1 || pos > size) return false;
-            if (pos == 1) return deleteAtBeginning();
-            if (pos == size) return deleteAtEnd();
-            Node cur = head;
-            for (int i = 1; i < pos; i++) cur = cur.next;
-            cur.prev.next = cur.next;
-            cur.next.prev = cur.prev;
-            size--; return true;
-        }
-
-        List<String> toList() {
-            List<String> out = new ArrayList<>();
-            Node cur = head;
-            while (cur != null) { out.add(cur.city); cur = cur.next; }
-            return out;
-        }
-
-        String displayForward() {
-            return String.join(" -> ", toList());
-        }
-
-        String displayBackward() {
-            List<String> l = toList(); Collections.reverse(l); return String.join(" -> ", l);
-        }
-
-        int getSize() { return size; }
-
-        String getMiddleCity() {
-            if (size == 0) return "List is empty";
-            Node slow = head, fast = head;
-            while (fast != null && fast.next != null) { slow = slow.next; fast = fast.next.next; }
-            return slow.city;
-        }
-    }
-
     private final DoublyLinkedList cityList = new DoublyLinkedList();
     private final List<String> validCities = Arrays.asList(
             "Lusaka","Ndola","Kitwe","Chingola","Kabwe","Chipata","Mufulira",
@@ -0,0 +1,85 @@
+package cbs;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CallIdIndexTest {
+
+    private static final int LIMIT = 64;
+
+    private static CdrStore store(ColumnBackend backend, int rows) {
+        CdrStore s = new CdrStore(backend);
+        for (int i = 0; i < rows; i++) add(s, "CDR" + i);
+        return s;
+    }
+
+    private static void add(CdrStore s, String callID) {
+        s.accept(callID, "260970000001", "260960000001", 1_704_067_200L, null, 1000);
+    }
+
+    @Test
+    void initialSizeDoesNotWrapForLargeStores() {
+        assertEquals(CallIdIndex.MAX_SLOTS, CallIdIndex.initialSlots(Integer.MAX_VALUE, CallIdIndex.MAX_SLOTS));
+        assertEquals(CallIdIndex.MAX_SLOTS, CallIdIndex.initialSlots(1 << 29, CallIdIndex.MAX_SLOTS));
+        assertEquals(16, CallIdIndex.initialSlots(0, CallIdIndex.MAX_SLOTS));
+        assertEquals(LIMIT, CallIdIndex.initialSlots(1000, LIMIT));
+    }
+
+    @Test
+    void addReportsFullAtTheLimitInsteadOfGrowing() {
+        CdrStore s = store(ColumnBackend.HEAP, 100);
+        CallIdIndex index = new CallIdIndex(s, LIMIT);
+        int accepted = 0;
+        while (accepted < 100 && index.add(accepted)) accepted++;
+        assertEquals(LIMIT / 2, accepted);
+        // a repeated ID takes no slot, so it is still answered
+        for (int row = 0; row < accepted; row++) assertEquals(row, index.find("cdr" + row));
+    }
+
+    @Test
+    void lookupsFallBackToAScanOnceTheIndexIsFull() {
+        CdrStore s = store(ColumnBackend.HEAP, 20);
+        assertTrue(s.buildCallIdIndex(LIMIT));
+        // appends past the limit drop the index
+        for (int i = 20; i < 200; i++) add(s, "CDR" + i);
+        add(s, "cdr5");
+        assertFalse(s.buildCallIdIndex(LIMIT));
+        assertEquals(5, s.indexOfCallId("CDR5"));
+        assertEquals(150, s.indexOfCallId("cdr150"));
+        assertEquals(199, s.indexOfCallId("Cdr199"));
+        assertEquals(-1, s.indexOfCallId("CDR200"));
+    }
+
+    @Test
+    void aStoreTooLargeToIndexIsNotIndexed() {
+        CdrStore s = store(ColumnBackend.HEAP, 100);
+        assertFalse(s.buildCallIdIndex(LIMIT));
+        assertEquals(99, s.indexOfCallId("cdr99"));
+    }
+
+    @Test
+    void duplicatesCannotBeSkippedPastTheLimit() {
+        CdrStore s = store(ColumnBackend.HEAP, 20);
+        assertTrue(s.buildCallIdIndex(LIMIT));
+        for (int i = 20; i < 200; i++) add(s, "CDR" + i);
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> s.appendAllNew(store(ColumnBackend.HEAP, 3)));
+        assertTrue(e.getMessage().startsWith("Too many Call IDs"));
+    }
+
+    @Test
+    void offHeapStoresScanForLookupsButStillSkipDuplicates() {
+        CdrStore s = store(ColumnBackend.OFF_HEAP, 50);
+        assertEquals(42, s.indexOfCallId("cdr42"));
+        assertEquals(-1, s.indexOfCallId("CDR50"));
+        CdrStore more = new CdrStore();
+        add(more, "cdr7");
+        add(more, "CDR50");
+        assertEquals(1, s.appendAllNew(more));
+        assertEquals(51, s.size());
+        assertEquals(50, s.indexOfCallId("cdr50"));
+    }
+}
@@ -0,0 +1,154 @@
+package cbs;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CdrLoaderTest {
+
+    private static final String TS = "2024-01-01 00:00:00";
+
+    @TempDir
+    Path dir;
+
+    private final List<String> rejects = new ArrayList<>();
+    private final CdrStore store = new CdrStore();
+
+    private static String row(String callID, String duration) {
+        return callID + ",260970000001,260960000001," + TS + "," + duration;
+    }
+
+    // Loads text in one chunk; every quarantined line is recorded as "line reason"
+    private CdrLoader.Stats load(String text) throws IOException {
+        return load(text, 1);
+    }
+
+    private CdrLoader.Stats load(String text, int parallelism) throws IOException {
+        Path file = dir.resolve("cdr.csv");
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        return CdrLoader.load(file, parallelism, CdrStore::new, (chunk, done, total) -> store.appendAll(chunk), () -> false,
+                false, (line, reason, t) -> rejects.add(line + " " + reason.name()));
+    }
+
+    @Test
+    void everyReasonIsReportedWithItsLine() throws IOException {
+        CdrLoader.Stats stats = load(String.join("\n",
+                row("C1", "10"),
+                "C2,260970000001,260960000001",
+                row("C3", "ten"),
+                "C4,260970000001,260960000001,yesterday,10",
+                row("C5", "-10"),
+                row("", "10"),
+                row("C7", "10") + ",extra",
+                row("C8", "10")));
+        assertEquals(List.of("2 TOO_FEW_FIELDS", "3 BAD_DURATION", "4 BAD_TIMESTAMP", "5 NEGATIVE_DURATION",
+                "6 EMPTY_CALL_ID", "7 EXTRA_FIELDS"), rejects);
+        for (RejectReason reason : RejectReason.values()) assertEquals(1, stats.count(reason), reason.name());
+        assertEquals(2, stats.rejected);
+        assertEquals(4, stats.suspicious());
+        assertEquals(6, stats.rows);
+        assertEquals(6, store.size());
+        assertEquals("C4", store.callID(1));
+        assertEquals("yesterday", store.timestamp(1));
+        assertEquals(-10, store.duration(2));
+        assertEquals(8, stats.lines);
+    }
+
+    // A line is quarantined for the first reason that applies
+    @Test
+    void aLineIsCountedOnce() throws IOException {
+        CdrLoader.Stats stats = load(",260970000001,260960000001,yesterday,-1,extra\n");
+        assertEquals(List.of("1 BAD_TIMESTAMP"), rejects);
+        assertEquals(0, stats.count(RejectReason.NEGATIVE_DURATION) + stats.count(RejectReason.EMPTY_CALL_ID)
+                + stats.count(RejectReason.EXTRA_FIELDS));
+    }
+
+    @Test
+    void blankLinesAreSkippedWithoutAReason() throws IOException {
+        CdrLoader.Stats stats = load("\n   \n" + row("C1", "5") + "\n\t\n");
+        assertEquals(List.of(), rejects);
+        assertEquals(1, stats.rows);
+        assertEquals(4, stats.lines);
+    }
+
+    @Test
+    void durationsParseLikeParseLong() throws IOException {
+        String[] good = {"0", "42", " 42 ", "+7", "007", "9223372036854775807", "-9223372036854775808"};
+        StringBuilder text = new StringBuilder();
+        for (String d : good) text.append(row("C", d)).append('\n');
+        load(text.toString());
+        assertEquals(good.length, store.size());
+        for (int i = 0; i < good.length; i++) assertEquals(Long.parseLong(good[i].trim()), store.duration(i), good[i]);
+    }
+
+    @Test
+    void badAndOverflowingDurationsAreRejected() throws IOException {
+        String[] bad = {"", " ", "+", "-", "1.5", "12a", "1e3", "0x10", "1 000", "--1", "9223372036854775808",
+                "-9223372036854775809", "99999999999999999999"};
+        StringBuilder text = new StringBuilder();
+        for (String d : bad) text.append(row("C", d)).append('\n');
+        CdrLoader.Stats stats = load(text.toString());
+        assertEquals(0, store.size());
+        assertEquals(bad.length, stats.count(RejectReason.BAD_DURATION));
+        assertEquals(bad.length, stats.rejected);
+    }
+
+    @Test
+    void negativeDurationsAreKeptAndReported() throws IOException {
+        CdrLoader.Stats stats = load(row("C1", "-1") + "\n" + row("C2", "-0") + "\n" + row("C3", "-9223372036854775808") + "\n");
+        assertEquals(List.of("1 NEGATIVE_DURATION", "3 NEGATIVE_DURATION"), rejects);
+        assertEquals(3, stats.rows);
+        assertEquals(0, store.duration(1));
+        assertEquals(Long.MIN_VALUE, store.duration(2));
+    }
+
+    // CR LF ends one line; a lone CR or LF ends one too, and a blank line between them still counts
+    @Test
+    void crLfLinesAreNumberedOnce() throws IOException {
+        CdrLoader.Stats stats = load(row("C1", "1") + "\r\n"
+                + "bad\r\n"
+                + "\r\n"
+                + row("C4", "x") + "\r"
+                + row("C5", "1") + "\n"
+                + "bad\r\n"
+                + row("C7", "1"));
+        assertEquals(List.of("2 TOO_FEW_FIELDS", "4 BAD_DURATION", "6 TOO_FEW_FIELDS"), rejects);
+        assertEquals(7, stats.lines);
+        assertEquals(3, store.size());
+        assertEquals("C7", store.callID(2));
+    }
+
+    // Chunk boundaries fall after a line terminator, possibly between the CR and LF of one line
+    @Test
+    void crLfLinesAreNumberedAcrossChunks() throws IOException {
+        StringBuilder text = new StringBuilder();
+        int lines = 300_000;
+        for (int i = 1; i <= lines; i++) text.append(i % 50_000 == 0 ? "bad" : row("C" + i, "1")).append("\r\n");
+        CdrLoader.Stats stats = load(text.toString(), 4);
+        List<String> expected = new ArrayList<>();
+        for (int i = 50_000; i <= lines; i += 50_000) expected.add(i + " TOO_FEW_FIELDS");
+        assertEquals(expected, rejects);
+        assertEquals(lines, stats.lines);
+        assertEquals(lines - expected.size(), store.size());
+    }
+
+    // A tail resuming between the CR and LF of a line must not see an extra blank line
+    @Test
+    void loadLinesResumesBetweenCrAndLf() throws IOException {
+        String first = row("C1", "1") + "\r";
+        Path file = dir.resolve("tail.csv");
+        Files.write(file, (first + "\nbad\r\n" + row("C3", "1") + "\r\n").getBytes(StandardCharsets.UTF_8));
+        CdrLoader.Stats stats = CdrLoader.loadLines(file, first.length(), 2, store, (line, reason, t) -> rejects.add(line + " " + reason.name()));
+        assertEquals(List.of("2 TOO_FEW_FIELDS"), rejects);
+        assertEquals(2, stats.lines);
+        assertEquals(1, store.size());
+    }
+}
@@ -0,0 +1,94 @@
+package cbs;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class NumberDictionaryTest {
+
+    private static NumberDictionary zambia() {
+        return new NumberDictionary("260", "0", "00");
+    }
+
+    @Test
+    void writtenFormsOfOneNumberShareACode() {
+        NumberDictionary d = zambia();
+        int code = d.intern("+260971234567");
+        assertEquals(code, d.intern("260971234567"));
+        assertEquals(code, d.intern("00260971234567"));
+        assertEquals(code, d.intern("0971234567"));
+        assertEquals(code, d.find("0971234567"));
+        assertEquals(1, d.size());
+    }
+
+    // A number reads back as it was first written, whichever form later rows used
+    @Test
+    void numbersReadBackInTheirFirstForm() {
+        NumberDictionary d = zambia();
+        String[] first = {"+260971234567", "00441632960001", "0961234567", "260951234567", "0", "+", "00", "097 123", "+1-555"};
+        for (String v : first) assertEquals(v, d.get(d.intern(v)));
+        assertEquals("+260971234567", d.get(d.intern("0971234567")));
+        assertEquals("0961234567", d.get(d.intern("+260961234567")));
+        assertEquals(first.length, d.size());
+    }
+
+    @Test
+    void withoutACountryNationalNumbersStayAsWritten() {
+        NumberDictionary d = new NumberDictionary("", "0", "00");
+        int national = d.intern("0971234567");
+        assertEquals(national, d.intern("0971234567"));
+        assertEquals(2, d.intern("+260971234567") + d.intern("00260971234567"));
+        assertEquals("0971234567", d.get(national));
+    }
+
+    @Test
+    void leadingZerosAndLongNumbersSurvive() {
+        NumberDictionary d = new NumberDictionary("", "", "");
+        int a = d.intern("007"), b = d.intern("7"), c = d.intern("123456789012345678");
+        assertEquals(3, d.size());
+        assertEquals("007", d.get(a));
+        assertEquals("7", d.get(b));
+        assertEquals("123456789012345678", d.get(c));
+    }
+
+    @Test
+    void filtersMatchAnyWrittenForm() {
+        NumberDictionary d = zambia();
+        for (String v : new String[]{"+260971234567", "0961234567", "00441632960001", "unknown"}) d.intern(v);
+        assertArrayEquals(new boolean[]{true, false, false, false}, d.matching("00260971234567", false));
+        assertArrayEquals(new boolean[]{true, true, false, false}, d.matching("+26", true));
+        assertArrayEquals(new boolean[]{true, true, false, false}, d.matching("0", true));
+        assertArrayEquals(new boolean[]{true, false, false, false}, d.matching("097", true));
+        assertArrayEquals(new boolean[]{true, true, true, false}, d.matching("+", true));
+        assertArrayEquals(new boolean[]{false, false, true, false}, d.matching("0044", true));
+        assertArrayEquals(new boolean[]{false, false, false, true}, d.matching("UNKNOWN", false));
+    }
+
+    @Test
+    void ranksFollowTheCanonicalNumbers() {
+        NumberDictionary d = zambia();
+        for (String v : new String[]{"0971234567", "+26096", "441632960001", "", "x"}) d.intern(v);
+        // 260971234567, 26096, 441632960001, "", "x"
+        assertArrayEquals(new int[]{2, 1, 3, 0, 4}, d.ranks());
+    }
+
+    // Snapshots keep their codes even when the plan now makes two numbers one
+    @Test
+    void restoreKeepsEveryCode() {
+        NumberDictionary d = zambia();
+        byte[] a = "0971234567".getBytes(), b = "+260971234567".getBytes();
+        assertEquals(0, d.restore(a, 0, a.length));
+        assertEquals(1, d.restore(b, 0, b.length));
+        assertEquals("0971234567", d.get(0));
+        assertEquals("+260971234567", d.get(1));
+        assertEquals(0, d.intern("00260971234567"));
+        assertArrayEquals(new boolean[]{true, true}, d.matching("260971234567", false));
+    }
+
+    @Test
+    void planPrefixesMustBeDigits() {
+        assertThrows(IllegalArgumentException.class, () -> new NumberDictionary("+260", "0", "00"));
+    }
+}
@@ -0,0 +1,58 @@
+package cbs;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StringDictionaryTest {
+
+    @Test
+    void pagedValuesReadBackAcrossPageBoundaries() {
+        StringDictionary d = new StringDictionary(ColumnBackend.OFF_HEAP);
+        // long values so some straddle the 1 MB pages, plus an empty and a non-ASCII one
+        String big = "x".repeat(300_000);
+        String[] values = {"CDR1", "", big + "a", big + "b", big + "c", big + "d", "réf-€1", "CDR1"};
+        for (int i = 0; i < values.length; i++) assertEquals(i, d.intern(values[i]));
+        for (int i = 0; i < values.length; i++) assertEquals(values[i], d.get(i));
+        assertEquals(6, d.find("réf-€1"));
+        assertEquals(0, d.find("CDR1"));
+        assertEquals(-1, d.find("CDR2"));
+    }
+
+    // A value interned twice has two codes, which must still sort as one
+    @Test
+    void pagedRanksFollowStringOrderWithTiesShared() {
+        StringDictionary d = new StringDictionary(ColumnBackend.OFF_HEAP);
+        for (String v : new String[]{"b", "a", "ab", "b", "", "B"}) d.intern(v);
+        assertArrayEquals(new int[]{4, 2, 3, 4, 0, 1}, d.ranks());
+    }
+
+    @Test
+    void pagedSnapshotsAndTheLiveDictionaryGrowApart() {
+        StringDictionary live = new StringDictionary(ColumnBackend.OFF_HEAP);
+        live.intern("one");
+        live.intern("two");
+        StringDictionary snap = live.snapshot();
+        assertEquals(2, live.intern("live"));
+        assertEquals(2, snap.intern("snap"));
+        assertEquals("live", live.get(2));
+        assertEquals("snap", snap.get(2));
+        assertEquals("two", snap.get(1));
+        assertEquals(3, live.size());
+    }
+
+    @Test
+    void pagedCallIdsMatchTheHeapStore() {
+        CdrStore heap = new CdrStore(ColumnBackend.HEAP);
+        CdrStore paged = new CdrStore(ColumnBackend.OFF_HEAP);
+        CdrStore chunk = new CdrStore();
+        for (int i = 0; i < 1000; i++) chunk.accept("CDR" + i % 700, "1", "2", 1_704_067_200L + i, null, i);
+        heap.appendAll(chunk);
+        paged.appendAll(chunk);
+        assertEquals(heap.size(), paged.size());
+        for (int r = 0; r < heap.size(); r++) assertEquals(heap.callID(r), paged.callID(r));
+        assertArrayEquals(CdrSorter.sort(heap, CdrSorter.Key.CALL_ID, false, CdrSorter.Key.DURATION, true),
+                CdrSorter.sort(paged, CdrSorter.Key.CALL_ID, false, CdrSorter.Key.DURATION, true));
+    }
+}
@@ -0,0 +1,140 @@
+package cbs;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TimestampParserTest {
+
+    // The formatters the loader used to try in turn, and what it stored for a value none of them accepted
+    private static final DateTimeFormatter[] ACCEPTED = {
+            DateTimeFormatter.ofPattern("yyyy-MM-dd:HH:mm:ss"),
+            DateTimeFormatter.ofPattern("yyyy-MM-dd:hh:mm:ss"),
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"),
+            DateTimeFormatter.ISO_LOCAL_DATE_TIME
+    };
+    private static final DateTimeFormatter NORMALISED = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static String legacy(String ts) {
+        for (DateTimeFormatter f : ACCEPTED) {
+            try {
+                return LocalDateTime.parse(ts, f).format(NORMALISED);
+            } catch (Exception ignored) {
+            }
+        }
+        return ts;
+    }
+
+    private static String parsed(String ts) {
+        long v = Timestamps.parse(ts);
+        return v == Timestamps.INVALID ? ts : Timestamps.format(v);
+    }
+
+    private static void assertLegacy(String ts) {
+        assertEquals(legacy(ts), parsed(ts), ts);
+    }
+
+    @Test
+    void colonLayoutMatchesTheOldFormatters() {
+        assertLegacy("2024-03-15:08:30:05");
+        assertLegacy("2024-02-29:23:59:59");
+        assertLegacy("2023-02-29:10:00:00");
+        assertLegacy("2024-04-31:00:00:00");
+        assertLegacy("2024-01-01:24:00:00");
+        assertLegacy("2024-01-01:24:00:01");
+        assertLegacy("2024-01-01:25:00:00");
+        assertLegacy("2024-01-01:10:60:00");
+        assertLegacy("2024-13-01:10:00:00");
+        assertLegacy("2024-01-01:10:00");
+        assertLegacy("0000-01-01:10:00:00");
+    }
+
+    // hh without an AM/PM marker never resolved, so these went through the HH pattern before it
+    @Test
+    void clockHourValuesMatchTheOldFormatters() {
+        assertLegacy("2024-03-15:01:00:00");
+        assertLegacy("2024-03-15:12:00:00");
+        assertLegacy("2024-03-15:00:15:00");
+        assertLegacy("2024-03-15:13:45:00");
+    }
+
+    @Test
+    void spaceLayoutMatchesTheOldFormatters() {
+        assertLegacy("2024-03-15 08:30:05");
+        assertLegacy("1999-12-31 23:59:59");
+        assertLegacy("2100-02-29 12:00:00");
+        assertLegacy("2000-02-30 12:00:00");
+        assertLegacy("2024-06-31 00:00:00");
+        assertLegacy("2024-01-01 24:00:00");
+        assertLegacy("2024-01-00 10:00:00");
+        assertLegacy("2024-1-01 10:00:00");
+        assertLegacy("2024-01-01 10:00:00.5");
+    }
+
+    @Test
+    void isoLayoutMatchesTheOldFormatters() {
+        assertLegacy("2024-03-15T08:30:05");
+        assertLegacy("2024-03-15T08:30");
+        assertLegacy("2024-03-15T08:30:05.1");
+        assertLegacy("2024-03-15T08:30:05.123456789");
+        assertLegacy("2024-03-15T08:30:05.1234567890");
+        assertLegacy("2024-03-15T08:30:05.");
+        assertLegacy("2024-02-30T08:30:05");
+        assertLegacy("2024-03-15T24:00:00");
+        assertLegacy("2024-03-15T08:3");
+        assertLegacy("2024-03-15T08:30:5");
+    }
+
+    // Every field a digit or two either side of its range, in all four shapes
+    @Test
+    void randomValuesMatchTheOldFormatters() {
+        Random random = new Random(42);
+        char[] separators = {':', ' ', 'T'};
+        for (int i = 0; i < 20_000; i++) {
+            char sep = separators[random.nextInt(separators.length)];
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%04d-%02d-%02d%c%02d:%02d", random.nextInt(10_000), random.nextInt(14),
+                    random.nextInt(33), sep, random.nextInt(26), random.nextInt(61)));
+            if (sep != 'T' || random.nextBoolean()) sb.append(String.format(":%02d", random.nextInt(61)));
+            if (sep == 'T' && random.nextInt(4) == 0) {
+                sb.append('.');
+                for (int d = random.nextInt(11); d >= 0; d--) sb.append((char) ('0' + random.nextInt(10)));
+            }
+            assertLegacy(sb.toString());
+        }
+    }
+
+    @Test
+    void unrecognisedValuesAreCountedNotPassedThrough() {
+        TimestampParser parser = new TimestampParser();
+        assertNull(parser.layoutName());
+        for (String ts : new String[]{"", "yesterday", "15/03/2024 08:30:05", "2024-03-15/08:30:05", "2024-03-15 08:30:xx"}) {
+            byte[] b = ts.getBytes();
+            assertEquals(Timestamps.INVALID, parser.parse(b, 0, b.length), ts);
+        }
+        assertEquals(5, parser.unrecognised());
+        assertEquals(0, parser.parsed());
+        assertNull(parser.layoutName());
+    }
+
+    // The first valid value fixes the layout tried first; values in another layout still parse
+    @Test
+    void layoutIsDetectedFromTheFirstValidValue() {
+        TimestampParser parser = new TimestampParser();
+        byte[] bad = "not a time".getBytes();
+        parser.parse(bad, 0, bad.length);
+        byte[] space = "2024-03-15 08:30:05".getBytes();
+        assertEquals(Timestamps.parse("2024-03-15 08:30:05"), parser.parse(space, 0, space.length));
+        assertEquals("yyyy-MM-dd HH:mm:ss", parser.layoutName());
+        byte[] iso = "xx2024-03-15T08:30:05xx".getBytes();
+        assertEquals(Timestamps.parse("2024-03-15T08:30:05"), parser.parse(iso, 2, 19));
+        assertEquals("yyyy-MM-dd HH:mm:ss", parser.layoutName());
+        assertEquals(2, parser.parsed());
+        assertEquals(1, parser.unrecognised());
+    }
+}
@@ -0,0 +1,52 @@
+package cbs.bench;
+
+import cbs.CdrGenerator;
+import cbs.CdrLoader;
+import cbs.CdrStore;
+import cbs.ColumnBackend;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Deterministic CDR data shared by the benchmarks, so results stay comparable between versions
+final class BenchData {
+
+    static final long SEED = 42;
+
+    private BenchData() {}
+
+    // A CSV file of 'rows' generated records in the layout the UI loads; the caller deletes it
+    static Path writeCsv(int rows) throws IOException {
+        Path file = Files.createTempFile("cdr-bench-" + rows + "-", ".csv");
+        CdrGenerator.Options o = new CdrGenerator.Options();
+        o.rows = rows;
+        o.seed = SEED;
+        o.senders = Math.max(100, rows / 10);
+        o.receivers = Math.max(100, rows / 5);
+        CdrGenerator.write(o, file, Runtime.getRuntime().availableProcessors());
+        return file;
+    }
+
+    // Call ID of a generated row
+    static String callId(long row) {
+        return String.format("CDR%010d", row);
+    }
+
+    // Columns go where -Dcbs.columns puts them, so a run with -jvmArgsAppend -Dcbs.columns=offheap
+    // measures the off-heap backend
+    static CdrStore load(Path file) throws IOException {
+        CdrStore store = new CdrStore(ColumnBackend.selected());
+        CdrLoader.load(file, Runtime.getRuntime().availableProcessors(), CdrStore::new, store::appendAll);
+        return store;
+    }
+
+    static CdrStore store(int rows) throws IOException {
+        Path file = writeCsv(rows);
+        try {
+            return load(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package cbs.bench;
+
+import cbs.CdrStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Find by Call ID, which replaced the linear and binary searches: building the index and probing it
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CallIdSearchBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    int rows;
+
+    CdrStore store;
+    String[] probes;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        store = BenchData.store(rows);
+        store.indexCallIds();
+        Random rnd = new Random(BenchData.SEED);
+        probes = new String[4096];
+        // mostly hits, in mixed case as users type them, plus some misses
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = i % 8 == 0 ? "NOPE" + i : BenchData.callId(rnd.nextInt(rows)).toLowerCase();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int lookup() {
+        return store.indexOfCallId(probes[next++ & (probes.length - 1)]);
+    }
+
+    // A snapshot has no index, so the first lookup builds one over all rows
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int buildIndex() {
+        return store.snapshot().indexOfCallId(probes[1]);
+    }
+}
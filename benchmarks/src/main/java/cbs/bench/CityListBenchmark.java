@@ -0,0 +1,67 @@
+package cbs.bench;
+
+import cities.DoublyLinkedList;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// LinkedListCitiesUI's list operations on lists far larger than the UI ever holds
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CityListBenchmark {
+
+    private static final String[] CITIES = {"Lusaka", "Ndola", "Kitwe", "Chingola", "Kabwe", "Chipata", "Mufulira", "Livingstone"};
+
+    @Param({"10000", "1000000", "10000000"})
+    int rows;
+
+    DoublyLinkedList list;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        list = fill();
+    }
+
+    private DoublyLinkedList fill() {
+        DoublyLinkedList l = new DoublyLinkedList();
+        for (int i = 0; i < rows; i++) l.insertAtEnd(CITIES[i % CITIES.length]);
+        return l;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public DoublyLinkedList build() {
+        return fill();
+    }
+
+    // Insert and delete in the middle, so the list keeps its size across invocations
+    @Benchmark
+    public boolean insertDeleteMiddle() {
+        int mid = rows / 2;
+        list.insertAtPosition("Kasama", mid);
+        return list.deleteAtPosition(mid);
+    }
+
+    @Benchmark
+    public boolean insertDeleteEnds() {
+        list.insertAtBeginning("Kasama");
+        list.insertAtEnd("Solwezi");
+        return list.deleteAtBeginning() && list.deleteAtEnd();
+    }
+
+    @Benchmark
+    public String middleCity() {
+        return list.getMiddleCity();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<String> toList() {
+        return list.toList();
+    }
+}
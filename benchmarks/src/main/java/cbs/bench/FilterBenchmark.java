@@ -0,0 +1,49 @@
+package cbs.bench;
+
+import cbs.CdrStore;
+import cbs.RecordFilter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+// The filter bar: a compound filter, a number prefix over both number columns, and a plain range
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FilterBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    int rows;
+
+    CdrStore store;
+    RecordFilter compound, numberPrefix, durationRange;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        store = BenchData.store(rows);
+        String sender = store.sender(0);
+        compound = RecordFilter.parse("sender = " + sender + " and duration > 600000 and date = " + store.timestamp(0).substring(0, 10));
+        numberPrefix = RecordFilter.parse("number = " + sender.substring(0, sender.length() - 4) + "*");
+        durationRange = RecordFilter.parse("duration >= 10s and duration < 1m");
+    }
+
+    @Benchmark
+    public BitSet compound() {
+        return compound.match(store);
+    }
+
+    @Benchmark
+    public BitSet numberPrefix() {
+        return numberPrefix.match(store);
+    }
+
+    @Benchmark
+    public BitSet durationRange() {
+        return durationRange.match(store);
+    }
+}
@@ -0,0 +1,47 @@
+package cbs.bench;
+
+import cbs.CdrLoader;
+import cbs.CdrStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Parsing a CDR file into a store: what Load CDRs does, on one thread and on all of them
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LoadBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    int rows;
+
+    // 0 means all available processors
+    @Param({"1", "0"})
+    int threads;
+
+    Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = BenchData.writeCsv(rows);
+        if (threads == 0) threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public CdrStore load() throws IOException {
+        CdrStore store = new CdrStore();
+        CdrLoader.load(file, threads, CdrStore::new, store::appendAll);
+        return store;
+    }
+}
@@ -0,0 +1,48 @@
+package cbs.bench;
+
+import cbs.CdrSorter;
+import cbs.CdrStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// The Sort menu: a numeric key, a text key through dictionary ranks, and a two-key sort
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SortBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    int rows;
+
+    CdrStore store;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        store = BenchData.store(rows);
+    }
+
+    @Benchmark
+    public int[] byDurationDescending() {
+        return CdrSorter.sort(store, CdrSorter.Key.DURATION, true, null, false);
+    }
+
+    @Benchmark
+    public int[] bySender() {
+        return CdrSorter.sort(store, CdrSorter.Key.SENDER, false, null, false);
+    }
+
+    @Benchmark
+    public int[] bySenderThenTimestamp() {
+        return CdrSorter.sort(store, CdrSorter.Key.SENDER, false, CdrSorter.Key.TIMESTAMP, true);
+    }
+
+    @Benchmark
+    public int[] senderColumnPositions() {
+        return CdrSorter.sortPositions(store, CdrSorter.Key.SENDER);
+    }
+}
@@ -0,0 +1,53 @@
+package cbs.bench;
+
+import cbs.TimestampParser;
+import cbs.Timestamps;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Timestamp normalisation: parsing the text column and formatting it back for display and export
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TimestampBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    int rows;
+
+    // All values back to back, 19 bytes each
+    byte[] text;
+    long[] epochs;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random rnd = new Random(BenchData.SEED);
+        text = new byte[rows * 19];
+        epochs = new long[rows];
+        for (int i = 0; i < rows; i++) {
+            epochs[i] = 1_704_067_200L + rnd.nextInt(366 * 86400);
+            byte[] b = Timestamps.format(epochs[i]).getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(b, 0, text, i * 19, 19);
+        }
+    }
+
+    @Benchmark
+    public long parse() {
+        TimestampParser parser = new TimestampParser();
+        long sum = 0;
+        for (int i = 0; i < rows; i++) sum += parser.parse(text, i * 19, 19);
+        return sum;
+    }
+
+    @Benchmark
+    public long format() {
+        long len = 0;
+        for (long e : epochs) len += Timestamps.format(e).length();
+        return len;
+    }
+}
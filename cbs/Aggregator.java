@@ -0,0 +1,157 @@
+package cbs;
+
+import java.util.List;
+
+// Per-subscriber totals: call count, total and longest duration and total charge per sender, receiver
+// or (sender, receiver) pair. Each segment of records is grouped into its own primitive hash map on
+// the common ForkJoinPool, then the maps are merged.
+public final class Aggregator {
+
+    public enum GroupBy {
+        SENDER("Sender"), RECEIVER("Receiver"), PAIR("Sender -> Receiver");
+
+        private final String label;
+        GroupBy(String label) { this.label = label; }
+        @Override public String toString() { return label; }
+    }
+
+    private static final int MIN_SEGMENT = 1 << 16;
+
+    private Aggregator() {}
+
+    public static Report aggregate(CdrStore store, GroupBy by) {
+        long t0 = System.nanoTime();
+        List<GroupMap> parts = Parallel.mapRanges(store.size(), MIN_SEGMENT, (from, to) -> {
+            GroupMap map = new GroupMap(1024);
+            for (int r = from; r < to; r++) {
+                long key;
+                switch (by) {
+                    case SENDER: key = store.senderCode(r); break;
+                    case RECEIVER: key = store.receiverCode(r); break;
+                    default: key = (long) store.senderCode(r) << 32 | store.receiverCode(r);
+                }
+                long charge = store.charge(r);
+                map.add(key, 1, store.duration(r), store.duration(r), charge == CdrStore.UNRATED ? 0 : charge);
+            }
+            return map;
+        });
+        GroupMap all = parts.get(0);
+        for (int i = 1; i < parts.size(); i++) all.merge(parts.get(i));
+        return new Report(store, by, all, Metrics.AGGREGATE.since(t0));
+    }
+
+    // Groups ordered by total duration, longest first
+    public static final class Report {
+        public final GroupBy groupBy;
+        public final long nanos;
+        private final CdrStore store;
+        private final long[] keys;
+        private final long[] calls, totalDuration, maxDuration, totalCharge;
+
+        Report(CdrStore store, GroupBy groupBy, GroupMap map, long nanos) {
+            this.store = store;
+            this.groupBy = groupBy;
+            this.nanos = nanos;
+            int n = map.size;
+            int[] slots = new int[n];
+            for (int s = 0, i = 0; s < map.keys.length; s++) if (map.used[s]) slots[i++] = s;
+            CdrSorter.sort(slots, (a, b) -> {
+                int c = Long.compare(map.total[b], map.total[a]);
+                return c != 0 ? c : Long.compare(map.count[b], map.count[a]);
+            });
+            keys = new long[n];
+            calls = new long[n];
+            totalDuration = new long[n];
+            maxDuration = new long[n];
+            totalCharge = new long[n];
+            for (int i = 0; i < n; i++) {
+                int s = slots[i];
+                keys[i] = map.keys[s];
+                calls[i] = map.count[s];
+                totalDuration[i] = map.total[s];
+                maxDuration[i] = map.max[s];
+                totalCharge[i] = map.charge[s];
+            }
+        }
+
+        public int size() { return keys.length; }
+        public long calls(int i) { return calls[i]; }
+        public long totalDuration(int i) { return totalDuration[i]; }
+        public long maxDuration(int i) { return maxDuration[i]; }
+        public long totalCharge(int i) { return totalCharge[i]; }
+        public boolean rated() { return store.isRated(); }
+
+        public String label(int i) {
+            long k = keys[i];
+            if (groupBy != GroupBy.PAIR) return store.numbers().get((int) k);
+            return store.numbers().get((int) (k >>> 32)) + " -> " + store.numbers().get((int) k);
+        }
+    }
+
+    // Open-addressing long -> aggregate map; the accumulators are parallel primitive arrays
+    static final class GroupMap {
+        long[] keys;
+        boolean[] used;
+        long[] count, total, max, charge;
+        int size;
+
+        GroupMap(int capacity) {
+            int cap = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+            keys = new long[cap];
+            used = new boolean[cap];
+            count = new long[cap];
+            total = new long[cap];
+            max = new long[cap];
+            charge = new long[cap];
+        }
+
+        void add(long key, long calls, long duration, long longest, long cents) {
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (used[slot] && keys[slot] != key) slot = (slot + 1) & mask;
+            if (!used[slot]) {
+                used[slot] = true;
+                keys[slot] = key;
+                max[slot] = longest;
+                if (++size * 2 > keys.length) {
+                    grow();
+                    add(key, calls, duration, longest, cents);
+                    return;
+                }
+            }
+            count[slot] += calls;
+            total[slot] += duration;
+            if (longest > max[slot]) max[slot] = longest;
+            charge[slot] += cents;
+        }
+
+        void merge(GroupMap other) {
+            for (int s = 0; s < other.keys.length; s++) {
+                if (other.used[s]) add(other.keys[s], other.count[s], other.total[s], other.max[s], other.charge[s]);
+            }
+        }
+
+        private void grow() {
+            GroupMap bigger = new GroupMap(keys.length * 2);
+            for (int s = 0; s < keys.length; s++) {
+                if (!used[s]) continue;
+                int mask = bigger.keys.length - 1;
+                int slot = hash(keys[s]) & mask;
+                while (bigger.used[slot]) slot = (slot + 1) & mask;
+                bigger.used[slot] = true;
+                bigger.keys[slot] = keys[s];
+                bigger.count[slot] = count[s];
+                bigger.total[slot] = total[s];
+                bigger.max[slot] = max[s];
+                bigger.charge[slot] = charge[s];
+            }
+            keys = bigger.keys; used = bigger.used; count = bigger.count;
+            total = bigger.total; max = bigger.max; charge = bigger.charge;
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package cbs;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+
+// Command-line billing run for servers without a display: load -> rate -> sort -> search ->
+// aggregate -> export, using only the engine classes in this package, so AWT is never loaded.
+//
+//   java -cp <classes> cbs.BillingBatch --input cdrs.csv [options]
+public final class BillingBatch {
+
+    static final int EXIT_OK = 0;
+    static final int EXIT_FAILED = 1;
+    static final int EXIT_USAGE = 2;
+    static final int EXIT_TOO_MANY_ERRORS = 3;
+
+    private static final String USAGE = String.join("\n",
+            "Usage: cbs.BillingBatch --input <cdr file, directory or glob> [options]",
+            "  files of a directory or glob load in parallel; a Call ID already seen in an earlier file is dropped",
+            "  --save-snapshot <file>   write a binary snapshot that --input can reopen without parsing",
+            "  --output <file>          export all records as CSV in the final order (gzipped if *.gz)",
+            "  --threads <n>            ingest threads (default: available processors)",
+            "  --columns <backend>      heap, offheap or mapped column storage (default heap, or -Dcbs.columns)",
+            "  --tariff <file>          rate every call with this tariff",
+            "  --sort <key>[:desc][,<key>[:desc]]",
+            "                           duration, timestamp, sender, receiver, call_id or charge",
+            "  --find <call id>         print the record with this Call ID (repeatable)",
+            "  --search <prefix>        count records matching a prefix (repeatable)",
+            "  --filter <expression>    count records matching a filter, e.g. \"sender = 26097* and duration > 10m\" (repeatable)",
+            "  --group <by>             aggregate by sender, receiver or pair",
+            "  --top <n>                groups to print or write (default 20, 0 = all)",
+            "  --report <file>          write the aggregate as CSV instead of printing it",
+            "  --quarantine <file>      write rejected and suspicious lines, with line number and reason",
+            "                           (a directory of <name>.rejects.csv files when loading several files)",
+            "  --metrics <file>         write counters and timings of every phase to a file at the end",
+            "  --max-errors <n>         fail when more lines than this are malformed",
+            "  --max-error-rate <r>     fail when this fraction of lines is malformed, e.g. 0.01");
+
+    private Path input, output, tariffFile, reportFile, snapshotFile, metricsFile, quarantineFile;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private CdrSorter.Key sortKey, thenKey;
+    private boolean sortDesc, thenDesc;
+    private final List<String> finds = new ArrayList<>();
+    private final List<String> searches = new ArrayList<>();
+    private final List<RecordFilter> filters = new ArrayList<>();
+    private Aggregator.GroupBy groupBy;
+    private int top = 20;
+    private long maxErrors = -1;
+    private double maxErrorRate = -1;
+
+    private BillingBatch() {}
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    static int run(String[] args) {
+        if (args.length == 1 && (args[0].equals("-h") || args[0].equals("--help"))) {
+            System.out.println(USAGE);
+            return EXIT_OK;
+        }
+        BillingBatch batch = new BillingBatch();
+        try {
+            batch.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return EXIT_USAGE;
+        }
+        try {
+            return batch.execute();
+        } catch (IOException | IllegalStateException e) {
+            // IllegalStateException: too many Call IDs across the input files to skip duplicates
+            System.err.println("Failed: " + e.getMessage());
+            return EXIT_FAILED;
+        }
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String opt = args[i];
+            if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + opt);
+            String v = args[++i];
+            switch (opt) {
+                case "--input": input = Paths.get(v); break;
+                case "--output": output = Paths.get(v); break;
+                case "--tariff": tariffFile = Paths.get(v); break;
+                case "--report": reportFile = Paths.get(v); break;
+                case "--save-snapshot": snapshotFile = Paths.get(v); break;
+                case "--metrics": metricsFile = Paths.get(v); break;
+                case "--quarantine": quarantineFile = Paths.get(v); break;
+                case "--columns": ColumnBackend.select(ColumnBackend.parse(v)); break;
+                case "--threads": threads = Math.max(1, parseInt(opt, v)); break;
+                case "--find": finds.add(v); break;
+                case "--search": searches.add(v); break;
+                case "--filter": filters.add(RecordFilter.parse(v)); break;
+                case "--top": top = Math.max(0, parseInt(opt, v)); break;
+                case "--group": groupBy = parseGroup(v); break;
+                case "--max-errors": maxErrors = parseInt(opt, v); break;
+                case "--max-error-rate":
+                    try {
+                        maxErrorRate = Double.parseDouble(v);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid number for " + opt + ": " + v);
+                    }
+                    break;
+                case "--sort": {
+                    String[] keys = v.split(",");
+                    if (keys.length > 2) throw new IllegalArgumentException("At most two sort keys: " + v);
+                    sortKey = parseKey(keys[0]);
+                    sortDesc = keys[0].toLowerCase(Locale.ROOT).endsWith(":desc");
+                    if (keys.length == 2) {
+                        thenKey = parseKey(keys[1]);
+                        thenDesc = keys[1].toLowerCase(Locale.ROOT).endsWith(":desc");
+                    }
+                    break;
+                }
+                default: throw new IllegalArgumentException("Unknown option " + opt);
+            }
+        }
+        if (input == null) throw new IllegalArgumentException("--input is required");
+        if (reportFile != null && groupBy == null) throw new IllegalArgumentException("--report needs --group");
+    }
+
+    private int execute() throws IOException {
+        long t0 = System.nanoTime();
+        Tariff tariff = tariffFile == null ? null : Tariff.load(tariffFile);
+
+        CdrStore store;
+        CdrLoader.Stats stats;
+        List<Path> files = MultiFileLoader.resolve(input.toString());
+        if (files.isEmpty()) throw new IOException("No CDR files match " + input);
+        if (files.size() == 1) input = files.get(0);
+        if (files.size() > 1) {
+            CdrStore loaded = new CdrStore(ColumnBackend.selected());
+            store = loaded;
+            long[] duplicates = new long[1];
+            if (quarantineFile != null) java.nio.file.Files.createDirectories(quarantineFile);
+            stats = MultiFileLoader.load(files, threads, new MultiFileLoader.Listener() {
+                @Override
+                public void progress(int file, long bytesDone, long bytesTotal) {}
+
+                @Override
+                public void fileLoaded(int file, CdrStore records, CdrLoader.Stats s) {
+                    duplicates[0] += loaded.appendAllNew(records);
+                }
+            }, () -> false, quarantineFile == null ? null : f -> quarantineFile.resolve(f.getFileName() + ".rejects.csv"));
+            System.out.printf("Load:      %s from %d files on %d thread(s)%n", stats, files.size(), threads);
+            if (duplicates[0] > 0) System.out.printf("           %,d duplicate Call ID(s) dropped%n", duplicates[0]);
+        } else if (CdrSnapshot.isSnapshot(input)) {
+            long t = System.nanoTime();
+            store = CdrSnapshot.read(input);
+            stats = new CdrLoader.Stats(store.size(), java.nio.file.Files.size(input), System.nanoTime() - t, store.size(),
+                    new long[RejectReason.values().length], 0, null);
+            System.out.printf("Snapshot:  %s%n", stats);
+        } else {
+            CdrStore loaded = new CdrStore(ColumnBackend.selected());
+            store = loaded;
+            QuarantineWriter quarantine = quarantineFile == null ? null : new QuarantineWriter(quarantineFile);
+            try {
+                stats = CdrLoader.load(input, threads, CdrStore::new, (chunk, done, total) -> loaded.appendAll(chunk),
+                        () -> false, false, quarantine);
+            } finally {
+                if (quarantine != null) quarantine.close();
+            }
+            System.out.printf("Load:      %s on %d thread(s)%n", stats, threads);
+            if (quarantine != null && quarantine.entries() > 0) {
+                System.out.printf("           %,d line(s) quarantined to %s%n", quarantine.entries(), quarantineFile);
+            }
+        }
+        if (stats.rejected > 0) System.out.printf("           %,d malformed line(s) skipped%n", stats.rejected);
+        if (stats.badTimestamps > 0) System.out.printf("           %,d unrecognised timestamp(s)%n", stats.badTimestamps);
+        for (RejectReason reason : RejectReason.values()) {
+            long n = stats.count(reason);
+            if (n > 0) System.out.printf("           %-32s %,12d%s%n", reason.label, n, reason.rejected ? "" : " (kept)");
+        }
+
+        long lines = stats.rows + stats.rejected;
+        double rate = lines == 0 ? 0 : (double) stats.errors() / lines;
+        if ((maxErrors >= 0 && stats.errors() > maxErrors) || (maxErrorRate >= 0 && rate > maxErrorRate)) {
+            System.err.printf("Aborting: %,d parse error(s) in %,d line(s) (%.3f%%) exceed the allowed threshold%n",
+                    stats.errors(), lines, rate * 100);
+            printSummary(stats, t0);
+            return EXIT_TOO_MANY_ERRORS;
+        }
+
+        if (tariff != null) {
+            RatingEngine.Result rated = RatingEngine.rate(store, tariff);
+            store.setCharges(rated);
+            System.out.println("Rate:      " + tariff.name() + ": " + rated);
+        }
+
+        if (snapshotFile != null) {
+            long t = System.nanoTime();
+            long bytes = CdrSnapshot.write(store, snapshotFile);
+            System.out.printf("Snapshot:  %.1f MB to %s in %d ms%n", bytes / 1048576.0, snapshotFile, millisSince(t));
+        }
+
+        if (sortKey != null) {
+            long t = System.nanoTime();
+            store.setOrder(CdrSorter.sort(store, sortKey, sortDesc, thenKey, thenDesc));
+            System.out.printf("Sort:      by %s%s%s in %d ms%n", sortKey, sortDesc ? " desc" : "",
+                    thenKey == null ? "" : ", then " + thenKey + (thenDesc ? " desc" : ""), millisSince(t));
+        }
+
+        for (String id : finds) {
+            int r = store.indexOfCallId(id);
+            if (r < 0) System.out.println("Find:      " + id + " not found");
+            else System.out.printf("Find:      %s,%s,%s,%s,%d%n", store.callID(r), store.sender(r), store.receiver(r),
+                    store.timestamp(r), store.duration(r));
+        }
+
+        if (!searches.isEmpty()) {
+            PrefixIndex index = PrefixIndex.build(store);
+            for (String prefix : searches) {
+                BitSet hits = index.match(prefix, store);
+                System.out.printf("Search:    %,d record(s) match \"%s\"%n", hits.cardinality(), prefix);
+            }
+        }
+
+        for (RecordFilter filter : filters) {
+            long t = System.nanoTime();
+            BitSet hits = filter.match(store);
+            System.out.printf("Filter:    %,d record(s) match \"%s\" in %d ms%n", hits.cardinality(), filter, millisSince(t));
+        }
+
+        if (groupBy != null) {
+            Aggregator.Report report = Aggregator.aggregate(store, groupBy);
+            System.out.printf("Group:     %,d group(s) by %s in %d ms%n", report.size(), groupBy, report.nanos / 1_000_000);
+            if (reportFile != null) {
+                CsvExporter.writeReport(report, top, reportFile);
+                System.out.println("Report:    " + reportFile);
+            } else {
+                int rows = top == 0 ? report.size() : Math.min(top, report.size());
+                for (int i = 0; i < rows; i++) {
+                    System.out.printf("  %-40s %,10d calls %,16d ms%s%n", report.label(i), report.calls(i), report.totalDuration(i),
+                            report.rated() ? "  " + Tariff.formatAmount(report.totalCharge(i)) : "");
+                }
+            }
+        }
+
+        if (output != null) {
+            long t = System.nanoTime();
+            long bytes = CsvExporter.write(store, output);
+            System.out.printf("Export:    %,d records (%.1f MB) to %s in %d ms%n", store.size(), bytes / 1048576.0, output, millisSince(t));
+        }
+
+        printSummary(stats, t0);
+        return EXIT_OK;
+    }
+
+    private void printSummary(CdrLoader.Stats stats, long t0) throws IOException {
+        double secs = (System.nanoTime() - t0) / 1e9;
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        System.out.printf("Total:     %.2f s, %,.0f rows/s end to end, peak heap %.1f MB (max %.0f MB)%n",
+                secs, stats.rows / Math.max(secs, 1e-9), peak / 1048576.0, Runtime.getRuntime().maxMemory() / 1048576.0);
+        if (metricsFile != null) {
+            Metrics.dump(metricsFile);
+            System.out.println("Metrics:   " + metricsFile);
+        }
+    }
+
+    private static long millisSince(long t) {
+        return (System.nanoTime() - t) / 1_000_000;
+    }
+
+    private static int parseInt(String opt, String v) {
+        try {
+            return Integer.parseInt(v);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + opt + ": " + v);
+        }
+    }
+
+    private static CdrSorter.Key parseKey(String spec) {
+        String name = spec.toUpperCase(Locale.ROOT);
+        if (name.endsWith(":DESC")) name = name.substring(0, name.length() - 5);
+        else if (name.endsWith(":ASC")) name = name.substring(0, name.length() - 4);
+        try {
+            return CdrSorter.Key.valueOf(name.replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown sort key: " + spec);
+        }
+    }
+
+    private static Aggregator.GroupBy parseGroup(String v) {
+        try {
+            return Aggregator.GroupBy.valueOf(v.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown grouping: " + v);
+        }
+    }
+}
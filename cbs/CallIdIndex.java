@@ -0,0 +1,70 @@
+package cbs;
+
+// Case-insensitive Call ID -> row hash index. Open addressing over row numbers (slot holds row + 1),
+// keyed by the case-folded ID; when an ID repeats, the first row keeps the slot like a top-down scan would.
+// The table stops growing at maxSlots; add then reports that the index is full.
+final class CallIdIndex {
+
+    // The largest power-of-two int array: room for 2^29 rows at the load factor of one half
+    static final int MAX_SLOTS = 1 << 30;
+
+    private final CdrStore store;
+    private final int maxSlots;
+    private int[] slots;
+    private int count;
+
+    // Empty; the caller adds the rows
+    CallIdIndex(CdrStore store, int maxSlots) {
+        this.store = store;
+        this.maxSlots = maxSlots;
+        slots = new int[initialSlots(store.size(), maxSlots)];
+    }
+
+    // Four slots per row rounded to a power of two, computed in long so large stores do not wrap
+    static int initialSlots(int rows, int maxSlots) {
+        return (int) Math.min(maxSlots, Math.max(16, Long.highestOneBit(Math.max(1, rows)) << 2));
+    }
+
+    int find(String callID) {
+        int mask = slots.length - 1;
+        for (int slot = foldedHash(callID) & mask, e; (e = slots[slot]) != 0; slot = (slot + 1) & mask) {
+            if (store.callID(e - 1).equalsIgnoreCase(callID)) return e - 1;
+        }
+        return -1;
+    }
+
+    // False once the table is at maxSlots and half full: the index can take no more rows
+    boolean add(int row) {
+        String id = store.callID(row);
+        int mask = slots.length - 1;
+        int slot = foldedHash(id) & mask;
+        for (int e; (e = slots[slot]) != 0; slot = (slot + 1) & mask) {
+            if (store.callID(e - 1).equalsIgnoreCase(id)) return true;
+        }
+        slots[slot] = row + 1;
+        if (++count * 2L > slots.length) {
+            if (slots.length >= maxSlots) return false;
+            grow();
+        }
+        return true;
+    }
+
+    private void grow() {
+        int[] old = slots;
+        slots = new int[old.length * 2];
+        int mask = slots.length - 1;
+        for (int e : old) {
+            if (e == 0) continue;
+            int slot = foldedHash(store.callID(e - 1)) & mask;
+            while (slots[slot] != 0) slot = (slot + 1) & mask;
+            slots[slot] = e;
+        }
+    }
+
+    // Equal for any two strings that equalsIgnoreCase considers equal
+    static int foldedHash(String s) {
+        int h = 0;
+        for (int i = 0, n = s.length(); i < n; i++) h = 31 * h + Character.toLowerCase(Character.toUpperCase(s.charAt(i)));
+        return StringDictionary.mix(h);
+    }
+}
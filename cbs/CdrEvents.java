@@ -0,0 +1,63 @@
+package cbs;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// Custom JFR events for the hot paths, recorded with e.g. -XX:StartFlightRecording; they cost next to
+// nothing while no recording is running
+final class CdrEvents {
+
+    private CdrEvents() {}
+
+    @Name("cbs.Load") @Label("CDR Load") @Category("CDR Billing")
+    static final class Load extends Event {
+        @Label("File") String file;
+        @Label("Rows") long rows;
+        @Label("Rejected Lines") long rejected;
+        @Label("Unrecognised Timestamps") long badTimestamps;
+        @Label("Size") @DataAmount long bytes;
+    }
+
+    @Name("cbs.LoadChunk") @Label("CDR Load Chunk") @Category("CDR Billing")
+    static final class LoadChunk extends Event {
+        @Label("Offset") long offset;
+        @Label("Size") @DataAmount long bytes;
+        @Label("Rows") long rows;
+        @Label("Timestamp Parsing (estimated)") @Timespan long timestamps;
+    }
+
+    @Name("cbs.Search") @Label("CDR Search") @Category("CDR Billing")
+    static final class Search extends Event {
+        @Label("Method") String method;
+        @Label("Query") String query;
+        @Label("Matches") long matches;
+    }
+
+    @Name("cbs.Sort") @Label("CDR Sort") @Category("CDR Billing")
+    static final class Sort extends Event {
+        @Label("Keys") String keys;
+        @Label("Rows") long rows;
+    }
+
+    @Name("cbs.Export") @Label("CDR Export") @Category("CDR Billing")
+    static final class Export extends Event {
+        @Label("File") String file;
+        @Label("Rows") long rows;
+        @Label("Size") @DataAmount long bytes;
+    }
+
+    @Name("cbs.Rate") @Label("CDR Rating") @Category("CDR Billing")
+    static final class Rate extends Event {
+        @Label("Tariff") String tariff;
+        @Label("Rows") long rows;
+    }
+
+    @Name("cbs.EdtStall") @Label("EDT Stall") @Category("CDR Billing")
+    static final class EdtStall extends Event {
+        @Label("Stall") @Timespan long stall;
+    }
+}
@@ -0,0 +1,352 @@
+package cbs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Synthetic CDR files in the format Load CDRs accepts, for scale tests without real subscriber data.
+// Output depends only on the options: rows are generated in fixed-size blocks, each with its own
+// random stream derived from the seed, so any number of threads produces the same bytes.
+//
+//   java -cp <classes> cbs.CdrGenerator --rows 100000000 --out cdrs.csv [options]
+public final class CdrGenerator {
+
+    private static final int BLOCK_ROWS = 1 << 15;
+    // Timestamp shapes: the four formats the loader has always accepted
+    public static final int COLON = 1, COLON_12H = 2, SPACE = 4, ISO = 8, ALL_FORMATS = 15;
+
+    public static final class Options {
+        public long rows = 1_000_000;
+        public long seed = 1;
+        // Distinct senders, drawn Zipf-distributed with this exponent, and receivers, drawn less skewed
+        public int senders = 1_000_000;
+        public double senderSkew = 1.1;
+        public int receivers = 2_000_000;
+        public double receiverSkew = 0.7;
+        // Fraction of lines that are malformed in one of several ways
+        public double malformedRate = 0;
+        public int formats = ALL_FORMATS;
+        // Calls are spread evenly over 'days' days from startEpoch, in file order
+        public long startEpoch = 1_704_067_200L; // 2024-01-01 00:00:00
+        public int days = 30;
+    }
+
+    private static final String USAGE = String.join("\n",
+            "Usage: cbs.CdrGenerator --rows <n> --out <file> [options]",
+            "  --seed <n>               random seed (default 1)",
+            "  --senders <n>            distinct senders (default 1000000)",
+            "  --sender-skew <s>        Zipf exponent of sender popularity (default 1.1)",
+            "  --receivers <n>          distinct receivers (default 2000000)",
+            "  --malformed <rate>       fraction of malformed lines, e.g. 0.001 (default 0)",
+            "  --formats <list>         timestamp formats: colon, colon12, space, iso (default all)",
+            "  --days <n>               days covered, from 2024-01-01 (default 30)",
+            "  --threads <n>            generator threads (default: available processors)");
+
+    private final Options o;
+    private final Zipf senderDist, receiverDist;
+    private final int[] formatChoices;
+    private final int numberDigits;
+
+    private CdrGenerator(Options o) {
+        if (o.rows < 0 || o.senders < 1 || o.receivers < 1 || o.days < 1) throw new IllegalArgumentException("Invalid generator options");
+        if ((o.formats & ALL_FORMATS) == 0) throw new IllegalArgumentException("No timestamp format selected");
+        this.o = o;
+        senderDist = new Zipf(o.senders, o.senderSkew);
+        receiverDist = new Zipf(o.receivers, o.receiverSkew);
+        formatChoices = new int[Integer.bitCount(o.formats & ALL_FORMATS)];
+        for (int f = 1, i = 0; f <= ISO; f <<= 1) if ((o.formats & f) != 0) formatChoices[i++] = f;
+        numberDigits = Math.max(7, Long.toString(Math.max(o.senders, o.receivers)).length());
+    }
+
+    // Writes o.rows rows to out and returns the number of bytes written
+    public static long write(Options o, Path out, int threads) throws IOException {
+        CdrGenerator g = new CdrGenerator(o);
+        long blocks = (o.rows + BLOCK_ROWS - 1) / BLOCK_ROWS;
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "cdr-generator");
+            t.setDaemon(true);
+            return t;
+        });
+        try (FileChannel ch = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            // A bounded window of blocks in flight, written in order as they complete
+            ArrayDeque<Future<ByteBuffer>> window = new ArrayDeque<>();
+            long next = 0, written = 0;
+            while (next < blocks || !window.isEmpty()) {
+                while (next < blocks && window.size() < Math.max(2, threads * 2)) {
+                    long block = next++;
+                    window.add(pool.submit(() -> g.block(block)));
+                }
+                ByteBuffer b = await(window.poll());
+                while (b.hasRemaining()) written += ch.write(b);
+            }
+            return written;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static ByteBuffer await(Future<ByteBuffer> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new java.io.InterruptedIOException("Generation interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private ByteBuffer block(long block) {
+        long from = block * BLOCK_ROWS, to = Math.min(o.rows, from + BLOCK_ROWS);
+        SplittableRandom rnd = new SplittableRandom(o.seed * 0x9E3779B97F4A7C15L + block);
+        Out out = new Out((int) (to - from) * 72);
+        double secondsPerRow = o.days * 86400.0 / Math.max(1, o.rows);
+        for (long row = from; row < to; row++) {
+            long epoch = o.startEpoch + (long) (row * secondsPerRow) + rnd.nextInt(60);
+            if (o.malformedRate > 0 && rnd.nextDouble() < o.malformedRate) malformed(out, rnd, row, epoch);
+            else record(out, rnd, row, epoch);
+        }
+        return ByteBuffer.wrap(out.buf, 0, out.pos);
+    }
+
+    private void record(Out out, SplittableRandom rnd, long row, long epoch) {
+        callId(out, row);
+        out.put(',');
+        number(out, "26097", senderDist.sample(rnd));
+        out.put(',');
+        number(out, "26096", receiverDist.sample(rnd));
+        out.put(',');
+        timestamp(out, rnd, epoch, formatChoices[rnd.nextInt(formatChoices.length)]);
+        out.put(',');
+        out.decimal(duration(rnd));
+        out.put('\n');
+    }
+
+    private void malformed(Out out, SplittableRandom rnd, long row, long epoch) {
+        switch (rnd.nextInt(4)) {
+            case 0: // too few fields
+                callId(out, row);
+                out.put(',');
+                number(out, "26097", senderDist.sample(rnd));
+                break;
+            case 1: // duration is not a number
+                record(out, rnd, row, epoch);
+                out.pos--;
+                out.ascii("ms");
+                break;
+            case 2: // timestamp in no accepted format
+                callId(out, row);
+                out.ascii(",2609700000001,2609600000001,31/12/2024 25:61,");
+                out.decimal(duration(rnd));
+                break;
+            default:
+                out.ascii("### mediation checkpoint ###");
+        }
+        out.put('\n');
+    }
+
+    private static void callId(Out out, long row) {
+        out.ascii("CDR");
+        out.padded(row, 10);
+    }
+
+    private void number(Out out, String prefix, int rank) {
+        out.ascii(prefix);
+        out.padded(rank, numberDigits);
+    }
+
+    // Milliseconds: some unanswered or dropped calls, a log-normal body around a minute and a
+    // Pareto tail of long calls, capped at six hours
+    private static long duration(SplittableRandom rnd) {
+        double u = rnd.nextDouble();
+        double ms;
+        if (u < 0.08) ms = rnd.nextInt(5000);
+        else if (u < 0.98) ms = Math.exp(Math.log(75_000) + 1.1 * rnd.nextGaussian());
+        else ms = 1_800_000 * Math.pow(1 - rnd.nextDouble(), -1 / 1.5);
+        return Math.min((long) ms, 6 * 3_600_000L);
+    }
+
+    private static void timestamp(Out out, SplittableRandom rnd, long epoch, int format) {
+        long day = Math.floorDiv(epoch, 86400L);
+        int secs = (int) (epoch - day * 86400L);
+        long ymd = Timestamps.civil(day);
+        out.padded(ymd >> 9, 4);
+        out.put('-');
+        out.padded(ymd >> 5 & 0xf, 2);
+        out.put('-');
+        out.padded(ymd & 0x1f, 2);
+        out.put(format == SPACE ? ' ' : format == ISO ? 'T' : ':');
+        int hour = secs / 3600;
+        // clock-hour 1-12, as "hh" prints it
+        if (format == COLON_12H) hour = hour % 12 == 0 ? 12 : hour % 12;
+        out.padded(hour, 2);
+        out.put(':');
+        out.padded(secs / 60 % 60, 2);
+        out.put(':');
+        out.padded(secs % 60, 2);
+        if (format == ISO && rnd.nextInt(4) == 0) {
+            out.put('.');
+            out.padded(rnd.nextInt(1000), 3);
+        }
+    }
+
+    // Growable byte buffer with the few formatting primitives a CSV row needs
+    private static final class Out {
+        byte[] buf;
+        int pos;
+
+        Out(int capacity) {
+            buf = new byte[Math.max(256, capacity)];
+        }
+
+        void ensure(int n) {
+            if (pos + n > buf.length) buf = java.util.Arrays.copyOf(buf, Math.max(pos + n, buf.length * 2));
+        }
+
+        void put(char c) {
+            ensure(1);
+            buf[pos++] = (byte) c;
+        }
+
+        void ascii(String s) {
+            ensure(s.length());
+            for (int i = 0; i < s.length(); i++) buf[pos++] = (byte) s.charAt(i);
+        }
+
+        // Non-negative v in at least 'width' digits
+        void padded(long v, int width) {
+            int n = 1;
+            for (long t = v; t >= 10; t /= 10) n++;
+            n = Math.max(n, width);
+            ensure(n);
+            for (int i = pos + n - 1; i >= pos; i--, v /= 10) buf[i] = (byte) ('0' + v % 10);
+            pos += n;
+        }
+
+        void decimal(long v) {
+            padded(v, 1);
+        }
+    }
+
+    // Rejection-inversion sampling of ranks 1..n with P(k) proportional to k^-s (Hörmann and
+    // Derflinger): constant time per sample and no table, so populations of any size are cheap
+    static final class Zipf {
+        private final int n;
+        private final double s;
+        private final double hIntegralX1, hIntegralN, threshold;
+
+        Zipf(int n, double s) {
+            if (s <= 0) throw new IllegalArgumentException("Zipf exponent must be positive");
+            this.n = n;
+            this.s = s;
+            hIntegralX1 = hIntegral(1.5) - 1;
+            hIntegralN = hIntegral(n + 0.5);
+            threshold = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+        }
+
+        int sample(SplittableRandom rnd) {
+            while (true) {
+                double u = hIntegralN + rnd.nextDouble() * (hIntegralX1 - hIntegralN);
+                double x = hIntegralInverse(u);
+                int k = (int) (x + 0.5);
+                if (k < 1) k = 1;
+                else if (k > n) k = n;
+                if (k - x <= threshold || u >= hIntegral(k + 0.5) - h(k)) return k;
+            }
+        }
+
+        private double hIntegral(double x) {
+            double logX = Math.log(x);
+            return helper2((1 - s) * logX) * logX;
+        }
+
+        private double h(double x) {
+            return Math.exp(-s * Math.log(x));
+        }
+
+        private double hIntegralInverse(double x) {
+            double t = Math.max(-1, x * (1 - s));
+            return Math.exp(helper1(t) * x);
+        }
+
+        // log1p(x) / x, accurate near 0
+        private static double helper1(double x) {
+            return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+        }
+
+        // expm1(x) / x, accurate near 0
+        private static double helper2(double x) {
+            return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+        }
+    }
+
+    public static void main(String[] args) {
+        Options o = new Options();
+        Path out = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String opt = args[i];
+                if (opt.equals("-h") || opt.equals("--help")) {
+                    System.out.println(USAGE);
+                    return;
+                }
+                if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + opt);
+                String v = args[++i];
+                switch (opt) {
+                    case "--rows": o.rows = Long.parseLong(v.replace("_", "")); break;
+                    case "--out": out = Paths.get(v); break;
+                    case "--seed": o.seed = Long.parseLong(v); break;
+                    case "--senders": o.senders = Integer.parseInt(v); break;
+                    case "--sender-skew": o.senderSkew = Double.parseDouble(v); break;
+                    case "--receivers": o.receivers = Integer.parseInt(v); break;
+                    case "--malformed": o.malformedRate = Double.parseDouble(v); break;
+                    case "--days": o.days = Integer.parseInt(v); break;
+                    case "--threads": threads = Integer.parseInt(v); break;
+                    case "--formats": o.formats = parseFormats(v); break;
+                    default: throw new IllegalArgumentException("Unknown option " + opt);
+                }
+            }
+            if (out == null) throw new IllegalArgumentException("--out is required");
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        try {
+            long t0 = System.nanoTime();
+            long bytes = write(o, out, threads);
+            double secs = (System.nanoTime() - t0) / 1e9;
+            System.out.printf("%,d rows, %.1f MB in %.2f s (%.0f MB/s)%n", o.rows, bytes / 1048576.0, secs, bytes / 1048576.0 / secs);
+        } catch (IOException e) {
+            System.err.println("Failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static int parseFormats(String list) {
+        int f = 0;
+        for (String name : list.split(",")) {
+            switch (name.trim().toLowerCase(java.util.Locale.ROOT)) {
+                case "colon": f |= COLON; break;
+                case "colon12": f |= COLON_12H; break;
+                case "space": f |= SPACE; break;
+                case "iso": f |= ISO; break;
+                case "all": f |= ALL_FORMATS; break;
+                default: throw new IllegalArgumentException("Unknown timestamp format: " + name);
+            }
+        }
+        return f;
+    }
+}
@@ -0,0 +1,512 @@
+package cbs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+public final class CdrLoader {
+
+    // Largest region mapped at once; a line is never split across two mappings
+    private static final long WINDOW = 1L << 28;
+    // Files are cut into a few chunks per thread, and into chunks of at most about TARGET_CHUNK so
+    // results arrive progressively, but never into chunks smaller than MIN_CHUNK
+    private static final long MIN_CHUNK = 4L << 20;
+    private static final long TARGET_CHUNK = 64L << 20;
+    // Every TIMESTAMP_SAMPLE-th timestamp parse is timed for the load.parse.timestamps estimate
+    private static final int TIMESTAMP_SAMPLE = 64;
+
+    // Receives the fields we keep from every accepted row. The timestamp arrives as an epoch second;
+    // rawTimestamp is only set, to the original text, when epochSecond is Timestamps.INVALID
+    public interface Sink {
+        void accept(String callID, String sender, String receiver, long epochSecond, String rawTimestamp, long duration);
+
+        // What the loader calls: the trimmed UTF-8 sender and receiver back to back at the start of
+        // numberBytes, which is reused for the next row. CdrStore interns them without making Strings.
+        default void accept(String callID, byte[] numberBytes, int senderLength, int receiverLength, long epochSecond,
+                            String rawTimestamp, long duration) {
+            accept(callID, new String(numberBytes, 0, senderLength, StandardCharsets.UTF_8),
+                    new String(numberBytes, senderLength, receiverLength, StandardCharsets.UTF_8),
+                    epochSecond, rawTimestamp, duration);
+        }
+    }
+
+    public static final class Stats {
+        public final long rows;
+        public final long bytes;
+        public final long nanos;
+        // Lines consumed, blank ones included
+        public final long lines;
+        // Non-blank lines not loaded, for a RejectReason that is 'rejected'
+        public final long rejected;
+        // Rows whose timestamp matched none of the accepted formats
+        public final long badTimestamps;
+        // Layout detected in the first chunk, null if no timestamp was recognised
+        public final String timestampLayout;
+        private final long[] reasons;
+
+        Stats(long rows, long bytes, long nanos, long lines, long[] reasons, long badTimestamps, String timestampLayout) {
+            this.rows = rows; this.bytes = bytes; this.nanos = nanos; this.lines = lines;
+            this.reasons = reasons; this.badTimestamps = badTimestamps; this.timestampLayout = timestampLayout;
+            long r = 0;
+            for (RejectReason reason : RejectReason.values()) if (reason.rejected) r += reasons[reason.ordinal()];
+            rejected = r;
+        }
+
+        // Lines quarantined for reason; a line is counted under the first reason that applies
+        public long count(RejectReason reason) { return reasons[reason.ordinal()]; }
+
+        // Rows loaded but quarantined for a reason that is not 'rejected'
+        public long suspicious() {
+            long n = 0;
+            for (RejectReason reason : RejectReason.values()) if (!reason.rejected) n += count(reason);
+            return n;
+        }
+
+        // One "label: count" entry per reason that occurred, or an empty string
+        public String reasonSummary() {
+            StringBuilder sb = new StringBuilder();
+            for (RejectReason reason : RejectReason.values()) {
+                long n = count(reason);
+                if (n == 0) continue;
+                if (sb.length() > 0) sb.append(", ");
+                sb.append(String.format("%s: %,d%s", reason.label, n, reason.rejected ? "" : " (kept)"));
+            }
+            return sb.toString();
+        }
+
+        // Totals over several loads that took 'nanos' together, e.g. one per file
+        static Stats sum(List<Stats> parts, long nanos) {
+            long rows = 0, bytes = 0, lines = 0, badTimestamps = 0;
+            long[] reasons = new long[RejectReason.values().length];
+            String layout = null;
+            for (Stats p : parts) {
+                rows += p.rows;
+                bytes += p.bytes;
+                lines += p.lines;
+                badTimestamps += p.badTimestamps;
+                for (int r = 0; r < reasons.length; r++) reasons[r] += p.reasons[r];
+                if (layout == null) layout = p.timestampLayout;
+            }
+            return new Stats(rows, bytes, nanos, lines, reasons, badTimestamps, layout);
+        }
+
+        public double seconds() { return nanos / 1e9; }
+        public double rowsPerSecond() { return nanos == 0 ? 0 : rows / seconds(); }
+        public double bytesPerSecond() { return nanos == 0 ? 0 : bytes / seconds(); }
+        // Rejected lines plus unrecognised timestamps
+        public long errors() { return rejected + badTimestamps; }
+
+        @Override
+        public String toString() {
+            return String.format("%,d rows in %.2f s (%,.0f rows/s, %.1f MB/s)",
+                    rows, seconds(), rowsPerSecond(), bytesPerSecond() / (1024 * 1024));
+        }
+    }
+
+    // Receives chunk sinks in file order, with the bytes covered by all chunks delivered so far
+    public interface ChunkListener<T> {
+        void chunkLoaded(T sink, long bytesDone, long bytesTotal);
+    }
+
+    // Receives quarantined lines in file order on the loading thread; line numbers are 1-based
+    public interface RejectListener {
+        void rejected(long line, RejectReason reason, String text);
+    }
+
+    // Field boundaries of the current line: positions of the first five commas
+    private final int[] cut = new int[5];
+    private byte[] scratch = new byte[128];
+    private final TimestampParser timestamps = new TimestampParser();
+    private final BooleanSupplier cancelled;
+    private final boolean keepRejects;
+    private long rows;
+    private long timestampNanos;
+    private boolean durationValid;
+    // 1-based number of the current line within the chunk; a CR LF pair ends one line
+    private long lineNo = 1;
+    private final long[] reasons = new long[RejectReason.values().length];
+    // Quarantined lines of this chunk, only kept when someone listens; their line numbers are chunk-relative
+    // until the line counts of all earlier chunks are known
+    private final List<Reject> rejects = new ArrayList<>();
+
+    private static final class Reject {
+        final long line;
+        final RejectReason reason;
+        final String text;
+
+        Reject(long line, RejectReason reason, String text) {
+            this.line = line; this.reason = reason; this.text = text;
+        }
+    }
+
+    private CdrLoader(BooleanSupplier cancelled, boolean keepRejects) {
+        this.cancelled = cancelled;
+        this.keepRejects = keepRejects;
+    }
+
+    // Single pass over the whole file into one sink
+    public static Stats load(Path file, Sink sink) throws IOException {
+        long t0 = System.nanoTime();
+        CdrEvents.Load event = new CdrEvents.Load();
+        event.begin();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            Metrics.LOAD_READ.since(t0);
+            CdrLoader loader = new CdrLoader(() -> false, false);
+            loader.scanChunk(ch, 0, ch.size(), sink);
+            return stats(new CdrLoader[]{loader}, ch.size(), t0, file, event);
+        }
+    }
+
+    public static <T extends Sink> Stats load(Path file, int parallelism, Supplier<T> sinks, Consumer<? super T> merge)
+            throws IOException {
+        return load(file, parallelism, sinks, (sink, done, total) -> merge.accept(sink), () -> false);
+    }
+
+    public static <T extends Sink> Stats load(Path file, int parallelism, Supplier<T> sinks,
+                                              ChunkListener<? super T> listener, BooleanSupplier cancelled)
+            throws IOException {
+        return load(file, parallelism, sinks, listener, cancelled, false, null);
+    }
+
+    // Parses the complete lines from byte offset 'from' on; an unterminated last line, which may still be
+    // being written, is left for a later call. Stats.bytes is the number of bytes consumed. Quarantined
+    // lines go to rejects, if not null, numbered from firstLine.
+    public static Stats loadLines(Path file, long from, long firstLine, Sink sink, RejectListener rejects) throws IOException {
+        long t0 = System.nanoTime();
+        CdrEvents.Load event = new CdrEvents.Load();
+        event.begin();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long end = lastLineEnd(ch, from, ch.size());
+            Metrics.LOAD_READ.since(t0);
+            CdrLoader loader = new CdrLoader(() -> false, rejects != null);
+            loader.scanChunk(ch, from, end, sink);
+            loader.deliverRejects(firstLine - 1, rejects);
+            return stats(new CdrLoader[]{loader}, end - from, t0, file, event);
+        }
+    }
+
+    // Parses the file in line-aligned chunks on up to 'parallelism' threads. Every chunk gets its own
+    // sink from 'sinks' and is handed to 'listener' on the calling thread in file order, as soon as it
+    // and all chunks before it are done. Once 'cancelled' reports true, parsing stops within a few
+    // thousand lines and a CancellationException is thrown. With completeLinesOnly an unterminated last
+    // line is not parsed and Stats.bytes ends after the last line terminator, where a tail can resume.
+    // Quarantined lines go to rejects, if not null, in file order just before their chunk is delivered.
+    public static <T extends Sink> Stats load(Path file, int parallelism, Supplier<T> sinks,
+                                              ChunkListener<? super T> listener, BooleanSupplier cancelled,
+                                              boolean completeLinesOnly, RejectListener rejects)
+            throws IOException {
+        long t0 = System.nanoTime();
+        CdrEvents.Load event = new CdrEvents.Load();
+        event.begin();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = completeLinesOnly ? lastLineEnd(ch, 0, ch.size()) : ch.size();
+            long[] bounds = chunkBounds(ch, size, Math.max(1, parallelism));
+            Metrics.LOAD_READ.since(t0);
+            int chunks = bounds.length - 1;
+            CdrLoader[] loaders = new CdrLoader[chunks];
+            if (chunks == 1) {
+                // a single chunk runs on the calling thread, which matters when many small files load at once
+                loaders[0] = new CdrLoader(cancelled, rejects != null);
+                T sink = sinks.get();
+                loaders[0].scanChunk(ch, 0, size, sink);
+                if (cancelled.getAsBoolean()) throw new CancellationException("Load cancelled");
+                loaders[0].deliverRejects(0, rejects);
+                listener.chunkLoaded(sink, size, size);
+                return stats(loaders, size, t0, file, event);
+            }
+            ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(parallelism, chunks)));
+            try {
+                List<Future<T>> results = new ArrayList<>(chunks);
+                for (int i = 0; i < chunks; i++) {
+                    final int idx = i;
+                    loaders[idx] = new CdrLoader(cancelled, rejects != null);
+                    results.add(pool.submit(() -> {
+                        T sink = sinks.get();
+                        loaders[idx].scanChunk(ch, bounds[idx], bounds[idx + 1], sink);
+                        return sink;
+                    }));
+                }
+                long linesBefore = 0;
+                for (int i = 0; i < chunks; i++) {
+                    T sink = await(results.get(i));
+                    if (cancelled.getAsBoolean()) throw new CancellationException("Load cancelled");
+                    loaders[i].deliverRejects(linesBefore, rejects);
+                    linesBefore += loaders[i].lineNo - 1;
+                    listener.chunkLoaded(sink, bounds[i + 1], size);
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+            return stats(loaders, size, t0, file, event);
+        }
+    }
+
+    private static Stats stats(CdrLoader[] loaders, long bytes, long t0, Path file, CdrEvents.Load event) {
+        long rows = 0, lines = 0, badTimestamps = 0;
+        long[] reasons = new long[RejectReason.values().length];
+        String layout = null;
+        for (CdrLoader loader : loaders) {
+            rows += loader.rows;
+            lines += loader.lineNo - 1;
+            for (int r = 0; r < reasons.length; r++) reasons[r] += loader.reasons[r];
+            badTimestamps += loader.timestamps.unrecognised();
+            if (layout == null) layout = loader.timestamps.layoutName();
+        }
+        Stats stats = new Stats(rows, bytes, System.nanoTime() - t0, lines, reasons, badTimestamps, layout);
+        long rejected = stats.rejected;
+        Metrics.LOAD.record(stats.nanos);
+        Metrics.ROWS_ACCEPTED.add(rows);
+        Metrics.ROWS_REJECTED.add(rejected);
+        Metrics.ROWS_SUSPICIOUS.add(stats.suspicious());
+        Metrics.TIMESTAMPS_UNRECOGNISED.add(badTimestamps);
+        Metrics.BYTES_READ.add(bytes);
+        if (event.shouldCommit()) {
+            event.file = file.toString();
+            event.rows = rows;
+            event.rejected = rejected;
+            event.badTimestamps = badTimestamps;
+            event.bytes = bytes;
+            event.commit();
+        }
+        return stats;
+    }
+
+    private void deliverRejects(long linesBefore, RejectListener listener) {
+        if (listener == null) return;
+        for (Reject r : rejects) listener.rejected(linesBefore + r.line, r.reason, r.text);
+        rejects.clear();
+    }
+
+    static <T> T await(Future<T> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Load interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    // Chunk start offsets plus the file size; every inner boundary sits just after a line terminator
+    private static long[] chunkBounds(FileChannel ch, long size, int parallelism) throws IOException {
+        long wanted = Math.max(parallelism == 1 ? 1 : parallelism * 4L, size / TARGET_CHUNK);
+        int chunks = (int) Math.max(1, Math.min(wanted, size / MIN_CHUNK));
+        long[] bounds = new long[chunks + 1];
+        bounds[chunks] = size;
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        int n = 1;
+        for (int i = 1; i < chunks; i++) {
+            long at = Math.max(size * i / chunks, bounds[n - 1]);
+            long next = nextLineStart(ch, at, size, probe);
+            if (next > bounds[n - 1] && next < size) bounds[n++] = next;
+        }
+        if (n == chunks) return bounds;
+        long[] trimmed = new long[n + 1];
+        System.arraycopy(bounds, 0, trimmed, 0, n);
+        trimmed[n] = size;
+        return trimmed;
+    }
+
+    private static long nextLineStart(FileChannel ch, long from, long size, ByteBuffer probe) throws IOException {
+        long pos = from;
+        while (pos < size) {
+            probe.clear();
+            int read = ch.read(probe, pos);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                byte b = probe.get(i);
+                if (b == '\n' || b == '\r') return pos + i + 1;
+            }
+            pos += read;
+        }
+        return size;
+    }
+
+    // Offset just past the last line terminator in [from, size), or from when there is none
+    private static long lastLineEnd(FileChannel ch, long from, long size) throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long end = size;
+        while (end > from) {
+            long start = Math.max(from, end - probe.capacity());
+            probe.clear().limit((int) (end - start));
+            while (probe.hasRemaining() && ch.read(probe, start + probe.position()) > 0) { }
+            for (int i = probe.position() - 1; i >= 0; i--) {
+                byte b = probe.get(i);
+                if (b == '\n' || b == '\r') return start + i + 1;
+            }
+            end = start;
+        }
+        return from;
+    }
+
+    // scan plus the per-chunk parse metrics
+    private void scanChunk(FileChannel ch, long start, long end, Sink sink) throws IOException {
+        CdrEvents.LoadChunk event = new CdrEvents.LoadChunk();
+        event.begin();
+        long t0 = System.nanoTime(), rows0 = rows, ts0 = timestampNanos;
+        scan(ch, start, end, sink);
+        Metrics.LOAD_PARSE.since(t0);
+        long timestamps = (timestampNanos - ts0) * TIMESTAMP_SAMPLE;
+        Metrics.LOAD_TIMESTAMPS.record(timestamps);
+        if (event.shouldCommit()) {
+            event.offset = start;
+            event.bytes = end - start;
+            event.rows = rows - rows0;
+            event.timestamps = timestamps;
+            event.commit();
+        }
+    }
+
+    private void scan(FileChannel ch, long start, long end, Sink sink) throws IOException {
+        long pos = start;
+        // A chunk may begin between the CR and LF of one line ending
+        boolean afterCR = false;
+        if (start > 0) {
+            ByteBuffer one = ByteBuffer.allocate(1);
+            afterCR = ch.read(one, start - 1) == 1 && one.get(0) == '\r';
+        }
+        while (pos < end) {
+            long len = Math.min(WINDOW, end - pos);
+            boolean last = pos + len >= end;
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, pos, len);
+            int limit = (int) len;
+            int lineStart = 0;
+            int commas = 0;
+            for (int i = 0; i < limit; i++) {
+                byte b = buf.get(i);
+                if (b == ',') {
+                    if (commas < 5) cut[commas++] = i;
+                } else if (b == '\n' || b == '\r') {
+                    if (b == '\n' && i == lineStart && (i > 0 ? buf.get(i - 1) == '\r' : afterCR)) {
+                        lineStart = i + 1;
+                        continue;
+                    }
+                    if ((lineNo & 0xfff) == 0 && cancelled.getAsBoolean()) throw new CancellationException("Load cancelled");
+                    emit(buf, lineStart, i, commas, sink);
+                    lineNo++;
+                    lineStart = i + 1;
+                    commas = 0;
+                }
+            }
+            if (last) {
+                if (lineStart < limit) {
+                    emit(buf, lineStart, limit, commas, sink);
+                    lineNo++;
+                }
+                pos = end;
+            } else {
+                if (lineStart == 0) throw new IOException("Line longer than " + WINDOW + " bytes at offset " + pos);
+                afterCR = buf.get(lineStart - 1) == '\r';
+                pos += lineStart;
+            }
+        }
+    }
+
+    // Same acceptance rule as the old split(",", -1): blank lines and rows with fewer than five fields are
+    // skipped; so are rows whose duration is not a whole number, which used to be stored as 0
+    private void emit(MappedByteBuffer buf, int from, int to, int commas, Sink sink) {
+        if (commas < 4) {
+            for (int i = from; i < to; i++) {
+                if ((buf.get(i) & 0xff) > ' ') { quarantine(buf, from, to, RejectReason.TOO_FEW_FIELDS); return; }
+            }
+            return;
+        }
+        int durEnd = commas == 5 ? cut[4] : to;
+        long duration = parseDuration(buf, cut[3] + 1, durEnd);
+        if (!durationValid) { quarantine(buf, from, to, RejectReason.BAD_DURATION); return; }
+        String callID = field(buf, from, cut[0]);
+        // sender, receiver and timestamp land side by side in scratch; the numbers stay bytes
+        int senderLen = copy(buf, cut[0] + 1, cut[1], 0);
+        int receiverLen = copy(buf, cut[1] + 1, cut[2], senderLen);
+        int tsFrom = senderLen + receiverLen;
+        int tsLen = copy(buf, cut[2] + 1, cut[3], tsFrom);
+        long epoch;
+        if (rows % TIMESTAMP_SAMPLE == 0) {
+            long t = System.nanoTime();
+            epoch = timestamps.parse(scratch, tsFrom, tsLen);
+            timestampNanos += System.nanoTime() - t;
+        } else {
+            epoch = timestamps.parse(scratch, tsFrom, tsLen);
+        }
+        String rawTimestamp = epoch == Timestamps.INVALID ? new String(scratch, tsFrom, tsLen, StandardCharsets.UTF_8) : null;
+        sink.accept(callID, scratch, senderLen, receiverLen, epoch, rawTimestamp, duration);
+        rows++;
+        // Loaded as they are, but reported
+        if (rawTimestamp != null) quarantine(buf, from, to, RejectReason.BAD_TIMESTAMP);
+        else if (duration < 0) quarantine(buf, from, to, RejectReason.NEGATIVE_DURATION);
+        else if (callID.isEmpty()) quarantine(buf, from, to, RejectReason.EMPTY_CALL_ID);
+        else if (commas == 5) quarantine(buf, from, to, RejectReason.EXTRA_FIELDS);
+    }
+
+    private void quarantine(MappedByteBuffer buf, int from, int to, RejectReason reason) {
+        reasons[reason.ordinal()]++;
+        if (!keepRejects) return;
+        byte[] text = new byte[to - from];
+        buf.get(from, text);
+        rejects.add(new Reject(lineNo, reason, new String(text, StandardCharsets.UTF_8)));
+    }
+
+    // Trimmed field text, decoded straight from the mapped bytes
+    private String field(MappedByteBuffer buf, int from, int to) {
+        int len = copy(buf, from, to, 0);
+        return len == 0 ? "" : new String(scratch, 0, len, StandardCharsets.UTF_8);
+    }
+
+    // Copies the trimmed field bytes into scratch at offset at, keeping what is before it, and returns their length
+    private int copy(MappedByteBuffer buf, int from, int to, int at) {
+        while (from < to && (buf.get(from) & 0xff) <= ' ') from++;
+        while (to > from && (buf.get(to - 1) & 0xff) <= ' ') to--;
+        int len = to - from;
+        if (at + len > scratch.length) scratch = Arrays.copyOf(scratch, Math.max(at + len, scratch.length * 2));
+        if (len > 0) buf.get(from, scratch, at, len);
+        return len;
+    }
+
+    // Long.parseLong semantics on the trimmed bytes without the exception: bad, empty or overflowing
+    // input returns 0 and clears durationValid
+    private long parseDuration(MappedByteBuffer buf, int from, int to) {
+        durationValid = false;
+        while (from < to && (buf.get(from) & 0xff) <= ' ') from++;
+        while (to > from && (buf.get(to - 1) & 0xff) <= ' ') to--;
+        if (from == to) return 0L;
+        boolean negative = false;
+        byte first = buf.get(from);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (++from == to) return 0L;
+        }
+        // accumulate negatively so Long.MIN_VALUE is representable
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long result = 0;
+        for (int i = from; i < to; i++) {
+            int d = buf.get(i) - '0';
+            if (d < 0 || d > 9) return 0L;
+            if (result < limit / 10) return 0L;
+            result *= 10;
+            if (result < limit + d) return 0L;
+            result -= d;
+        }
+        durationValid = true;
+        return negative ? result : -result;
+    }
+}
@@ -0,0 +1,300 @@
+package cbs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+// Binary columnar image of a CdrStore, reopened without parsing any text. Layout, little-endian,
+// every section padded to 8 bytes:
+//
+//   "CDRSNAP\0"  int version  int flags (1 = rated, 2 = has display order)  int rows  int 0
+//   3 dictionaries (call IDs, numbers, unparsed timestamps): int count  int bytes  int[count + 1] offsets  UTF-8 bytes
+//   int[rows] call ID codes, sender codes, receiver codes
+//   long[rows] epoch seconds, durations, then charges if rated
+//   int[rows] display order if present
+//   long CRC-32C of everything before it
+public final class CdrSnapshot {
+
+    private static final byte[] MAGIC = "CDRSNAP\0".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+    private static final int RATED = 1, ORDERED = 2;
+    private static final int HEADER = 24;
+    // Largest region checksummed per mapping
+    private static final long WINDOW = 1L << 28;
+
+    private CdrSnapshot() {}
+
+    // True when the file starts with the snapshot magic, so Load can tell snapshots from CSV
+    public static boolean isSnapshot(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer b = ByteBuffer.allocate(MAGIC.length);
+            while (b.hasRemaining() && ch.read(b) > 0) { }
+            return !b.hasRemaining() && b.flip().equals(ByteBuffer.wrap(MAGIC));
+        }
+    }
+
+    // Writes store (typically a snapshot) to file, replacing it only once the whole image is written
+    public static long write(CdrStore store, Path file) throws IOException {
+        long t0 = System.nanoTime();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        int rows = store.size();
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Out out = new Out(ch);
+            out.bytes(MAGIC);
+            out.putInt(VERSION);
+            out.putInt((store.isRated() ? RATED : 0) | (store.orderColumn() != null ? ORDERED : 0));
+            out.putInt(rows);
+            out.putInt(0);
+            out.dictionary(store.callIds());
+            out.dictionary(store.numbers());
+            out.dictionary(store.rawTimestamps());
+            out.ints(store.callIdColumn(), rows);
+            out.ints(store.senderColumn(), rows);
+            out.ints(store.receiverColumn(), rows);
+            out.longs(store.epochColumn(), rows);
+            out.longs(store.durationColumn(), rows);
+            if (store.isRated()) out.longs(store.chargeColumn(), rows);
+            if (store.orderColumn() != null) out.ints(new IntColumn.Heap(store.orderColumn()), rows);
+            out.finish();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, file, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        Metrics.SNAPSHOT_WRITE.since(t0);
+        return Files.size(file);
+    }
+
+    // Maps the file, verifies magic, version and checksum, and bulk-copies the columns. Dictionary
+    // values stay encoded in the mapping and are decoded as they are first displayed.
+    public static CdrStore read(Path file) throws IOException {
+        return read(file, ColumnBackend.selected());
+    }
+
+    public static CdrStore read(Path file, ColumnBackend backend) throws IOException {
+        long t0 = System.nanoTime();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER + 8) throw new IOException(file.getFileName() + ": not a CDR snapshot");
+            ByteBuffer head = map(ch, 0, HEADER);
+            byte[] magic = new byte[MAGIC.length];
+            head.get(magic);
+            if (!ByteBuffer.wrap(magic).equals(ByteBuffer.wrap(MAGIC))) throw new IOException(file.getFileName() + ": not a CDR snapshot");
+            int version = head.getInt();
+            if (version != VERSION) throw new IOException(file.getFileName() + ": unsupported snapshot version " + version);
+            int flags = head.getInt();
+            int rows = head.getInt();
+            verify(ch, size, file);
+
+            In in = new In(ch, HEADER, size - 8, backend);
+            StringDictionary callIds = in.dictionary(backend);
+            NumberDictionary numbers = in.numbers();
+            StringDictionary raw = in.dictionary(ColumnBackend.HEAP);
+            IntColumn ids = in.intColumn(rows);
+            IntColumn senders = in.intColumn(rows);
+            IntColumn receivers = in.intColumn(rows);
+            LongColumn epochs = in.longColumn(rows);
+            LongColumn durations = in.longColumn(rows);
+            LongColumn charges = (flags & RATED) != 0 ? in.longColumn(rows) : null;
+            int[] order = (flags & ORDERED) != 0 ? in.ints(rows) : null;
+            CdrStore store = CdrStore.of(backend, callIds, numbers, raw, rows, ids, senders, receivers, epochs, durations,
+                    charges, order);
+            Metrics.SNAPSHOT_READ.since(t0);
+            return store;
+        }
+    }
+
+    private static void verify(FileChannel ch, long size, Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        long end = size - 8;
+        for (long pos = 0; pos < end; pos += WINDOW) crc.update(map(ch, pos, Math.min(WINDOW, end - pos)));
+        long stored = map(ch, end, 8).getLong();
+        if (stored != crc.getValue()) throw new IOException(file.getFileName() + ": snapshot checksum mismatch, the file is damaged");
+    }
+
+    private static MappedByteBuffer map(FileChannel ch, long pos, long len) throws IOException {
+        MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, pos, len);
+        b.order(ByteOrder.LITTLE_ENDIAN);
+        return b;
+    }
+
+    private static int pad(long n) {
+        return (int) (-n & 7);
+    }
+
+    // Sequential reader mapping one section at a time, so no single mapping exceeds 2 GB
+    private static final class In {
+        private final FileChannel ch;
+        private final long end;
+        private final ColumnBackend backend;
+        private long pos;
+
+        In(FileChannel ch, long pos, long end, ColumnBackend backend) {
+            this.ch = ch;
+            this.pos = pos;
+            this.end = end;
+            this.backend = backend;
+        }
+
+        private ByteBuffer section(long len) throws IOException {
+            if (len < 0 || pos + len > end) throw new IOException("Truncated snapshot");
+            ByteBuffer b = map(ch, pos, len);
+            pos += len + pad(len);
+            return b;
+        }
+
+        // Decoded lazily from the mapping on the heap; on a paged backend the values are copied to its pages
+        StringDictionary dictionary(ColumnBackend backend) throws IOException {
+            ByteBuffer head = section(8);
+            int count = head.getInt(), bytes = head.getInt();
+            if (count < 0) throw new IOException("Truncated snapshot");
+            int[] offsets = ints(count + 1);
+            ByteBuffer encoded = section(bytes);
+            if (backend == ColumnBackend.HEAP) return new StringDictionary(encoded, offsets);
+            StringDictionary d = new StringDictionary(backend);
+            for (int code = 0; code < count; code++) {
+                byte[] b = new byte[offsets[code + 1] - offsets[code]];
+                encoded.get(offsets[code], b);
+                d.append(b);
+            }
+            return d;
+        }
+
+        // Same layout as dictionary(); every number is packed again as it is read, keeping its code even where
+        // this process's numbering plan makes two of them one number
+        NumberDictionary numbers() throws IOException {
+            ByteBuffer head = section(8);
+            int count = head.getInt(), bytes = head.getInt();
+            if (count < 0) throw new IOException("Truncated snapshot");
+            int[] offsets = ints(count + 1);
+            byte[] b = new byte[bytes];
+            section(bytes).get(b);
+            NumberDictionary d = new NumberDictionary();
+            for (int code = 0; code < count; code++) d.restore(b, offsets[code], offsets[code + 1] - offsets[code]);
+            return d;
+        }
+
+        int[] ints(int n) throws IOException {
+            int[] a = new int[n];
+            section(4L * n).asIntBuffer().get(a);
+            return a;
+        }
+
+        IntColumn intColumn(int n) throws IOException {
+            if (backend == ColumnBackend.HEAP) return new IntColumn.Heap(ints(n));
+            IntColumn c = backend.ints(n);
+            c.write(0, section(4L * n).asIntBuffer());
+            return c;
+        }
+
+        LongColumn longColumn(int n) throws IOException {
+            if (backend == ColumnBackend.HEAP) {
+                long[] a = new long[n];
+                section(8L * n).asLongBuffer().get(a);
+                return new LongColumn.Heap(a);
+            }
+            LongColumn c = backend.longs(n);
+            c.write(0, section(8L * n).asLongBuffer());
+            return c;
+        }
+    }
+
+    // Buffered writer that checksums every byte it flushes
+    private static final class Out {
+        private final FileChannel ch;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32C crc = new CRC32C();
+        private long written;
+
+        Out(FileChannel ch) {
+            this.ch = ch;
+        }
+
+        void putInt(int v) throws IOException {
+            room(4);
+            buf.putInt(v);
+        }
+
+        void bytes(byte[] b) throws IOException {
+            for (int i = 0; i < b.length; ) {
+                room(1);
+                int k = Math.min(b.length - i, buf.remaining());
+                buf.put(b, i, k);
+                i += k;
+            }
+        }
+
+        void dictionary(CodeDictionary d) throws IOException {
+            int count = d.size();
+            byte[][] encoded = new byte[count][];
+            int[] offsets = new int[count + 1];
+            long total = 0;
+            for (int code = 0; code < count; code++) {
+                encoded[code] = d.get(code).getBytes(StandardCharsets.UTF_8);
+                total += encoded[code].length;
+                if (total > Integer.MAX_VALUE) throw new IOException("Dictionary too large for a snapshot");
+                offsets[code + 1] = (int) total;
+            }
+            putInt(count);
+            putInt((int) total);
+            ints(new IntColumn.Heap(offsets), count + 1);
+            for (byte[] b : encoded) bytes(b);
+            align();
+        }
+
+        void ints(IntColumn c, int n) throws IOException {
+            for (int i = 0; i < n; ) {
+                room(4);
+                int k = Math.min(n - i, buf.remaining() / 4);
+                c.read(i, buf.asIntBuffer().limit(k));
+                buf.position(buf.position() + 4 * k);
+                i += k;
+            }
+            align();
+        }
+
+        void longs(LongColumn c, int n) throws IOException {
+            for (int i = 0; i < n; ) {
+                room(8);
+                int k = Math.min(n - i, buf.remaining() / 8);
+                c.read(i, buf.asLongBuffer().limit(k));
+                buf.position(buf.position() + 8 * k);
+                i += k;
+            }
+        }
+
+        private void align() throws IOException {
+            for (int p = pad(written + buf.position()); p > 0; p--) {
+                room(1);
+                buf.put((byte) 0);
+            }
+        }
+
+        private void room(int n) throws IOException {
+            if (buf.remaining() < n) flush();
+        }
+
+        private void flush() throws IOException {
+            buf.flip();
+            crc.update(buf.duplicate());
+            written += buf.remaining();
+            while (buf.hasRemaining()) ch.write(buf);
+            buf.clear();
+        }
+
+        void finish() throws IOException {
+            flush();
+            buf.putLong(crc.getValue());
+            buf.flip();
+            while (buf.hasRemaining()) ch.write(buf);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package cbs;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Orders a CdrStore without moving its rows: sorts an int permutation of record numbers with a
+// stable merge sort, in parallel for large inputs. Text keys compare by dictionary rank, so no String
+// is touched per comparison.
+public final class CdrSorter {
+
+    public enum Key {
+        DURATION("Duration"), TIMESTAMP("Timestamp"), SENDER("Sender"), RECEIVER("Receiver"), CALL_ID("Call ID"),
+        CHARGE("Charge");
+
+        private final String label;
+        Key(String label) { this.label = label; }
+        @Override public String toString() { return label; }
+    }
+
+    // Total order over record numbers
+    interface RecordOrder {
+        int compare(int a, int b);
+    }
+
+    private static final int INSERTION_SORT_MAX = 32;
+    private static final int PARALLEL_MIN = 1 << 16;
+
+    private CdrSorter() {}
+
+    // Record numbers of store ordered by primary then secondary (may be null); ties keep load order
+    public static int[] sort(CdrStore store, Key primary, boolean primaryDescending, Key secondary, boolean secondaryDescending) {
+        CdrEvents.Sort event = new CdrEvents.Sort();
+        event.begin();
+        long t0 = System.nanoTime();
+        RecordOrder first = order(store, primary, primaryDescending);
+        RecordOrder cmp = first;
+        if (secondary != null && secondary != primary) {
+            RecordOrder second = order(store, secondary, secondaryDescending);
+            cmp = (a, b) -> {
+                int c = first.compare(a, b);
+                return c != 0 ? c : second.compare(a, b);
+            };
+        }
+        int n = store.size();
+        int[] perm = new int[n];
+        for (int i = 0; i < n; i++) perm[i] = i;
+        sort(perm, cmp);
+        Metrics.SORT.since(t0);
+        if (event.shouldCommit()) {
+            event.keys = primary + (primaryDescending ? " desc" : "")
+                    + (secondary == null || secondary == primary ? "" : ", " + secondary + (secondaryDescending ? " desc" : ""));
+            event.rows = n;
+            event.commit();
+        }
+        return perm;
+    }
+
+    // Display positions of store ordered by key ascending, ties in display order: the rows of a table over
+    // the store sorted on one column
+    public static int[] sortPositions(CdrStore store, Key key) {
+        CdrEvents.Sort event = new CdrEvents.Sort();
+        event.begin();
+        long t0 = System.nanoTime();
+        RecordOrder asc = order(store, key, false);
+        int n = store.size();
+        int[] perm = new int[n];
+        for (int i = 0; i < n; i++) perm[i] = i;
+        sort(perm, (a, b) -> asc.compare(store.record(a), store.record(b)));
+        Metrics.SORT.since(t0);
+        if (event.shouldCommit()) {
+            event.keys = key + " (positions)";
+            event.rows = n;
+            event.commit();
+        }
+        return perm;
+    }
+
+    // The descending counterpart of a sortPositions result in one pass: reversed, with every run of equal
+    // keys put back in display order
+    public static int[] reversePositions(CdrStore store, Key key, int[] ascending) {
+        RecordOrder asc = order(store, key, false);
+        int n = ascending.length;
+        int[] desc = new int[n];
+        for (int i = 0; i < n; i++) desc[i] = ascending[n - 1 - i];
+        for (int from = 0, to; from < n; from = to) {
+            int first = store.record(desc[from]);
+            for (to = from + 1; to < n && asc.compare(first, store.record(desc[to])) == 0; to++) {}
+            for (int i = from, j = to - 1; i < j; i++, j--) {
+                int t = desc[i];
+                desc[i] = desc[j];
+                desc[j] = t;
+            }
+        }
+        return desc;
+    }
+
+    static void sort(int[] perm, RecordOrder cmp) {
+        int[] tmp = new int[perm.length];
+        if (perm.length >= PARALLEL_MIN && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            ForkJoinPool.commonPool().invoke(new SortTask(perm, tmp, 0, perm.length, cmp));
+        } else {
+            mergeSort(perm, tmp, 0, perm.length, cmp);
+        }
+    }
+
+    static RecordOrder order(CdrStore store, Key key, boolean descending) {
+        RecordOrder asc;
+        switch (key) {
+            case DURATION:
+                asc = (a, b) -> Long.compare(store.duration(a), store.duration(b));
+                break;
+            case TIMESTAMP:
+                asc = (a, b) -> Long.compare(store.epochSecond(a), store.epochSecond(b));
+                break;
+            case SENDER: {
+                int[] rank = store.numbers().ranks();
+                asc = (a, b) -> Integer.compare(rank[store.senderCode(a)], rank[store.senderCode(b)]);
+                break;
+            }
+            case RECEIVER: {
+                int[] rank = store.numbers().ranks();
+                asc = (a, b) -> Integer.compare(rank[store.receiverCode(a)], rank[store.receiverCode(b)]);
+                break;
+            }
+            case CHARGE:
+                asc = (a, b) -> Long.compare(store.charge(a), store.charge(b));
+                break;
+            default: {
+                int[] rank = store.callIds().ranks();
+                asc = (a, b) -> Integer.compare(rank[store.callIdCode(a)], rank[store.callIdCode(b)]);
+            }
+        }
+        if (!descending) return asc;
+        RecordOrder ascending = asc;
+        return (a, b) -> ascending.compare(b, a);
+    }
+
+    // Stable: on ties the element from the left run is taken first
+    private static void mergeSort(int[] a, int[] tmp, int lo, int hi, RecordOrder cmp) {
+        if (hi - lo <= INSERTION_SORT_MAX) {
+            insertionSort(a, lo, hi, cmp);
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        mergeSort(a, tmp, lo, mid, cmp);
+        mergeSort(a, tmp, mid, hi, cmp);
+        merge(a, tmp, lo, mid, hi, cmp);
+    }
+
+    private static void merge(int[] a, int[] tmp, int lo, int mid, int hi, RecordOrder cmp) {
+        if (cmp.compare(a[mid - 1], a[mid]) <= 0) return;
+        System.arraycopy(a, lo, tmp, lo, mid - lo);
+        int i = lo, j = mid, k = lo;
+        while (i < mid && j < hi) a[k++] = cmp.compare(a[j], tmp[i]) < 0 ? a[j++] : tmp[i++];
+        while (i < mid) a[k++] = tmp[i++];
+    }
+
+    private static void insertionSort(int[] a, int lo, int hi, RecordOrder cmp) {
+        for (int i = lo + 1; i < hi; i++) {
+            int v = a[i];
+            int j = i - 1;
+            while (j >= lo && cmp.compare(a[j], v) > 0) {
+                a[j + 1] = a[j];
+                j--;
+            }
+            a[j + 1] = v;
+        }
+    }
+
+    private static final class SortTask extends RecursiveAction {
+        private final int[] a, tmp;
+        private final int lo, hi;
+        private final RecordOrder cmp;
+
+        SortTask(int[] a, int[] tmp, int lo, int hi, RecordOrder cmp) {
+            this.a = a; this.tmp = tmp; this.lo = lo; this.hi = hi; this.cmp = cmp;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo < PARALLEL_MIN) {
+                mergeSort(a, tmp, lo, hi, cmp);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new SortTask(a, tmp, lo, mid, cmp), new SortTask(a, tmp, mid, hi, cmp));
+            merge(a, tmp, lo, mid, hi, cmp);
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package cbs;
+
+import java.util.Arrays;
+
+// Column-oriented CDR storage: one primitive column per field, text fields held as dictionary codes.
+// The columns live where the store's ColumnBackend puts them, on or off the heap.
+public final class CdrStore implements CdrLoader.Sink {
+
+    // Timestamps that match no accepted format keep their text: the epoch column then holds
+    // RAW_BASE + a code into rawTimestamps, far below any real epoch second
+    private static final long RAW_BASE = Long.MIN_VALUE;
+    static final long RAW_LIMIT = RAW_BASE + Integer.MAX_VALUE;
+    // Charge of a record that has not been, or could not be, rated
+    public static final long UNRATED = -1L;
+
+    private final StringDictionary callIds;
+    // Senders and receivers share one dictionary, so the same number has the same code in both columns
+    private final NumberDictionary numbers;
+    private final StringDictionary rawTimestamps;
+
+    private final ColumnBackend backend;
+    private IntColumn callIdCodes;
+    private IntColumn senderCodes;
+    private IntColumn receiverCodes;
+    private LongColumn epochSeconds;
+    private LongColumn durations;
+    // Minor-unit charges from the last rating run, null until the store has been rated
+    private LongColumn charges;
+    private int size;
+    // Display order as record numbers, null while records are shown in load order; positions is its inverse
+    private int[] order;
+    private int[] positions;
+    // Built on demand and kept current by every append; dropped for good once it is full
+    private CallIdIndex callIdIndex;
+    private boolean callIdIndexFull;
+    // Set on snapshots: the columns belong to the live store and are copied before the first write
+    private boolean shared;
+    // The live store this one is a snapshot of, or this store itself
+    private CdrStore origin = this;
+
+    // On the heap: for parse chunks and other short-lived stores
+    public CdrStore() {
+        this(ColumnBackend.HEAP);
+    }
+
+    // For a dataset, usually with ColumnBackend.selected(). Call IDs, nearly one per record, are kept
+    // on the backend's pages as well; the other dictionaries hold far fewer values and stay on the heap.
+    public CdrStore(ColumnBackend backend) {
+        this(backend, new StringDictionary(backend), new NumberDictionary(), new StringDictionary());
+        callIdCodes = backend.ints(16);
+        senderCodes = backend.ints(16);
+        receiverCodes = backend.ints(16);
+        epochSeconds = backend.longs(16);
+        durations = backend.longs(16);
+    }
+
+    private CdrStore(ColumnBackend backend, StringDictionary callIds, NumberDictionary numbers, StringDictionary rawTimestamps) {
+        this.backend = backend;
+        this.callIds = callIds;
+        this.numbers = numbers;
+        this.rawTimestamps = rawTimestamps;
+    }
+
+    // Store over columns read from a CdrSnapshot; the columns may be longer than size
+    static CdrStore of(ColumnBackend backend, StringDictionary callIds, NumberDictionary numbers, StringDictionary rawTimestamps,
+                       int size, IntColumn callIdCodes, IntColumn senderCodes, IntColumn receiverCodes,
+                       LongColumn epochSeconds, LongColumn durations, LongColumn charges, int[] order) {
+        CdrStore s = new CdrStore(backend, callIds, numbers, rawTimestamps);
+        s.size = size;
+        s.callIdCodes = callIdCodes;
+        s.senderCodes = senderCodes;
+        s.receiverCodes = receiverCodes;
+        s.epochSeconds = epochSeconds;
+        s.durations = durations;
+        s.charges = charges;
+        s.order = order;
+        return s;
+    }
+
+    public int size() { return size; }
+    public ColumnBackend backend() { return backend; }
+    public boolean isEmpty() { return size == 0; }
+
+    // Record shown at a display position, and the reverse
+    public int record(int position) { return order == null ? position : order[position]; }
+
+    public int position(int record) {
+        if (order == null) return record;
+        if (positions == null) {
+            int[] p = new int[order.length];
+            for (int i = 0; i < size; i++) p[order[i]] = i;
+            positions = p;
+        }
+        return positions[record];
+    }
+
+    // Installs a permutation of all record numbers, e.g. from CdrSorter, as the display order
+    public void setOrder(int[] perm) {
+        if (perm.length != size) throw new IllegalArgumentException("Order covers " + perm.length + " of " + size + " records");
+        order = Arrays.copyOf(perm, durations.capacity());
+        positions = null;
+    }
+
+    public String callID(int row) { return callIds.get(callIdCodes.get(row)); }
+    public String sender(int row) { return numbers.get(senderCodes.get(row)); }
+    public String receiver(int row) { return numbers.get(receiverCodes.get(row)); }
+    public long duration(int row) { return durations.get(row); }
+    public boolean isRated() { return charges != null; }
+    public long charge(int row) { return charges == null ? UNRATED : charges.get(row); }
+
+    public boolean hasTimestamp(int row) { return epochSeconds.get(row) > RAW_LIMIT; }
+
+    // Epoch second of the row, or Timestamps.INVALID when the source text was not a recognised time
+    public long epochSecond(int row) {
+        long v = epochSeconds.get(row);
+        return v > RAW_LIMIT ? v : Timestamps.INVALID;
+    }
+
+    // Normalised "yyyy-MM-dd HH:mm:ss" text, or the original text when it could not be parsed
+    public String timestamp(int row) {
+        long v = epochSeconds.get(row);
+        return v > RAW_LIMIT ? Timestamps.format(v) : rawTimestamps.get((int) (v - RAW_BASE));
+    }
+
+    public int callIdCode(int row) { return callIdCodes.get(row); }
+    public int senderCode(int row) { return senderCodes.get(row); }
+    public int receiverCode(int row) { return receiverCodes.get(row); }
+    public StringDictionary callIds() { return callIds; }
+    public NumberDictionary numbers() { return numbers; }
+
+    // Raw columns for CdrSnapshot, valid up to size(); epochs keeps the RAW_BASE encoding
+    StringDictionary rawTimestamps() { return rawTimestamps; }
+    IntColumn callIdColumn() { return callIdCodes; }
+    IntColumn senderColumn() { return senderCodes; }
+    IntColumn receiverColumn() { return receiverCodes; }
+    LongColumn epochColumn() { return epochSeconds; }
+    LongColumn durationColumn() { return durations; }
+    LongColumn chargeColumn() { return charges; }
+    int[] orderColumn() { return order; }
+
+    // First row whose Call ID equals callID ignoring case, or -1; O(1) once the index exists, a column
+    // scan without one
+    public int indexOfCallId(String callID) {
+        CdrEvents.Search event = new CdrEvents.Search();
+        event.begin();
+        long t0 = System.nanoTime();
+        indexCallIds();
+        int row = callIdIndex != null ? callIdIndex.find(callID) : scanCallId(callID);
+        Metrics.SEARCH_CALL_ID.since(t0);
+        if (event.shouldCommit()) {
+            event.method = "callid";
+            event.query = callID;
+            event.matches = row < 0 ? 0 : 1;
+            event.commit();
+        }
+        return row;
+    }
+
+    // Only heap stores index Call IDs for lookups: off-heap and mapped stores are for datasets that
+    // outgrow the heap, so they scan the Call ID column instead of holding a table per row
+    public void indexCallIds() {
+        if (backend == ColumnBackend.HEAP) buildCallIdIndex(CallIdIndex.MAX_SLOTS);
+    }
+
+    // False when the store has more Call IDs than an index of maxSlots can hold
+    boolean buildCallIdIndex(int maxSlots) {
+        if (callIdIndex != null || callIdIndexFull) return callIdIndex != null;
+        CallIdIndex index = new CallIdIndex(this, maxSlots);
+        for (int row = 0; row < size; row++) {
+            if (!index.add(row)) {
+                callIdIndexFull = true;
+                return false;
+            }
+        }
+        callIdIndex = index;
+        return true;
+    }
+
+    private int scanCallId(String callID) {
+        boolean[] match = new boolean[callIds.size()];
+        boolean any = false;
+        for (int code = 0; code < match.length; code++) {
+            if (callIds.get(code).equalsIgnoreCase(callID)) match[code] = any = true;
+        }
+        if (!any) return -1;
+        for (int row = 0; row < size; row++) {
+            if (match[callIdCodes.get(row)]) return row;
+        }
+        return -1;
+    }
+
+    @Override
+    public void accept(String callID, String sender, String receiver, long epochSecond, String rawTimestamp, long duration) {
+        long epoch = epochSecond == Timestamps.INVALID ? RAW_BASE + rawTimestamps.intern(rawTimestamp) : epochSecond;
+        add(callIds.intern(callID), numbers.intern(sender), numbers.intern(receiver), epoch, duration);
+    }
+
+    @Override
+    public void accept(String callID, byte[] numberBytes, int senderLength, int receiverLength, long epochSecond,
+                       String rawTimestamp, long duration) {
+        long epoch = epochSecond == Timestamps.INVALID ? RAW_BASE + rawTimestamps.intern(rawTimestamp) : epochSecond;
+        add(callIds.intern(callID), numbers.intern(numberBytes, 0, senderLength),
+                numbers.intern(numberBytes, senderLength, receiverLength), epoch, duration);
+    }
+
+    // Installs the charges RatingEngine computed over this store or a snapshot of it, taking over their
+    // column; records appended since stay unrated
+    public void setCharges(RatingEngine.Result rated) {
+        LongColumn c = rated.charges;
+        if (c.capacity() < durations.capacity()) c = c.grow(durations.capacity());
+        c.fill(Math.min(rated.rows, size), c.capacity(), UNRATED);
+        charges = c;
+    }
+
+    // Appends every row of other, translating its dictionary codes into this store's; charges are kept
+    // when both stores are rated
+    public void appendAll(CdrStore other) {
+        append(other, null);
+    }
+
+    // appendAll without the rows whose Call ID, ignoring case, is already in this store - the same call
+    // delivered again in another file. Repeats within other are all kept. Returns the rows skipped.
+    public int appendAllNew(CdrStore other) {
+        if (!buildCallIdIndex(CallIdIndex.MAX_SLOTS)) {
+            throw new IllegalStateException(String.format(
+                    "Too many Call IDs to skip duplicates: the Call ID index holds at most %,d", CallIdIndex.MAX_SLOTS / 2));
+        }
+        // one Call ID index probe per distinct ID of other, not per row; nothing is written while probing,
+        // so the probes run in parallel
+        boolean[] known = new boolean[other.callIds.size()];
+        CallIdIndex index = callIdIndex;
+        boolean any = Parallel.mapRanges(known.length, 1 << 12, (from, to) -> {
+            boolean found = false;
+            for (int code = from; code < to; code++) {
+                if (index.find(other.callIds.get(code)) >= 0) known[code] = found = true;
+            }
+            return found;
+        }).contains(Boolean.TRUE);
+        return append(other, any ? known : null);
+    }
+
+    private int append(CdrStore other, boolean[] skipCallIds) {
+        int[] idMap = remap(other.callIds, callIds, skipCallIds);
+        int[] numMap = new int[other.numbers.size()];
+        for (int code = 0; code < numMap.length; code++) numMap[code] = numbers.intern(other.numbers, code);
+        int[] rawMap = remap(other.rawTimestamps, rawTimestamps, null);
+        ensureCapacity(size + other.size);
+        int skipped = 0;
+        for (int i = 0; i < other.size; i++) {
+            if (skipCallIds != null && skipCallIds[other.callIdCodes.get(i)]) {
+                skipped++;
+                continue;
+            }
+            long epoch = other.epochSeconds.get(i);
+            if (epoch <= RAW_LIMIT) epoch = RAW_BASE + rawMap[(int) (epoch - RAW_BASE)];
+            callIdCodes.set(size, idMap[other.callIdCodes.get(i)]);
+            senderCodes.set(size, numMap[other.senderCodes.get(i)]);
+            receiverCodes.set(size, numMap[other.receiverCodes.get(i)]);
+            epochSeconds.set(size, epoch);
+            durations.set(size, other.durations.get(i));
+            appended();
+            if (charges != null && other.charges != null) charges.set(size - 1, other.charges.get(i));
+        }
+        return skipped;
+    }
+
+    // Read-only view of the records present now. It shares the live columns, which are append-only,
+    // so it stays consistent while the live store grows; hand it to another thread through an
+    // executor or SwingWorker so the submit publishes it.
+    public CdrStore snapshot() {
+        CdrStore s = new CdrStore(backend, callIds.snapshot(), numbers.snapshot(), rawTimestamps.snapshot());
+        s.callIdCodes = callIdCodes;
+        s.senderCodes = senderCodes;
+        s.receiverCodes = receiverCodes;
+        s.epochSeconds = epochSeconds;
+        s.durations = durations;
+        s.charges = charges;
+        s.order = order;
+        s.size = size;
+        s.shared = true;
+        s.origin = origin;
+        return s;
+    }
+
+    // Whether other is this store, the live store behind it or another snapshot of that store: results
+    // computed over one still hold for the others' first rows
+    public boolean sameDataset(CdrStore other) {
+        return other != null && other.origin == origin;
+    }
+
+    private void add(int callID, int sender, int receiver, long epoch, long duration) {
+        if (size == durations.capacity() || shared) ensureCapacity(size + 1);
+        callIdCodes.set(size, callID);
+        senderCodes.set(size, sender);
+        receiverCodes.set(size, receiver);
+        epochSeconds.set(size, epoch);
+        durations.set(size, duration);
+        appended();
+    }
+
+    // New records go to the end of the display order
+    private void appended() {
+        if (order != null) order[size] = size;
+        if (charges != null) charges.set(size, UNRATED);
+        if (positions != null) positions[size] = size;
+        if (callIdIndex != null && !callIdIndex.add(size)) {
+            callIdIndex = null;
+            callIdIndexFull = true;
+        }
+        size++;
+    }
+
+    private void ensureCapacity(int min) {
+        int length = durations.capacity();
+        if (min <= length && !shared) return;
+        // paged columns grow a page at a time without moving anything, so they need no headroom
+        int cap = backend == ColumnBackend.HEAP ? Math.max(min, length + (length >> 1)) : min;
+        boolean copy = shared;
+        shared = false;
+        callIdCodes = copy ? callIdCodes.copy(cap) : callIdCodes.grow(cap);
+        senderCodes = copy ? senderCodes.copy(cap) : senderCodes.grow(cap);
+        receiverCodes = copy ? receiverCodes.copy(cap) : receiverCodes.grow(cap);
+        epochSeconds = copy ? epochSeconds.copy(cap) : epochSeconds.grow(cap);
+        durations = copy ? durations.copy(cap) : durations.grow(cap);
+        if (charges != null) charges = copy ? charges.copy(cap) : charges.grow(cap);
+        cap = durations.capacity();
+        if (order != null) order = Arrays.copyOf(order, cap);
+        if (positions != null) positions = Arrays.copyOf(positions, cap);
+    }
+
+    // Codes in skip are left unmapped, so a paged dictionary does not store values no row will use
+    private static int[] remap(StringDictionary from, StringDictionary to, boolean[] skip) {
+        int[] map = new int[from.size()];
+        for (int code = 0; code < map.length; code++) map[code] = skip != null && skip[code] ? -1 : to.intern(from.get(code));
+        return map;
+    }
+}
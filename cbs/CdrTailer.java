@@ -0,0 +1,49 @@
+package cbs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Follows a CDR file that another process keeps appending to. Each poll parses only the complete
+// lines written since the previous one; a line still being written is picked up by a later poll.
+public final class CdrTailer {
+
+    // Returned by poll when the file got shorter, i.e. it was truncated or replaced
+    public static final long TRUNCATED = -1;
+
+    private final Path file;
+    private long offset;
+    // Number of the next line, for quarantined lines
+    private long line;
+
+    // Starts after 'offset' bytes and 'lines' lines, e.g. Stats.bytes and Stats.lines of a completeLinesOnly
+    // load of the same file
+    public CdrTailer(Path file, long offset, long lines) {
+        this.file = file;
+        this.offset = offset;
+        this.line = lines + 1;
+    }
+
+    public Path file() { return file; }
+    public long offset() { return offset; }
+
+    public long poll(CdrLoader.Sink sink) throws IOException {
+        return poll(sink, null);
+    }
+
+    // Rows appended to sink, 0 when nothing complete was added, or TRUNCATED; after a truncation the
+    // next poll starts again from the beginning of the file. Quarantined lines go to rejects, if not null.
+    public long poll(CdrLoader.Sink sink, CdrLoader.RejectListener rejects) throws IOException {
+        long size = Files.size(file);
+        if (size < offset) {
+            offset = 0;
+            line = 1;
+            return TRUNCATED;
+        }
+        if (size == offset) return 0;
+        CdrLoader.Stats stats = CdrLoader.loadLines(file, offset, line, sink, rejects);
+        offset += stats.bytes;
+        line += stats.lines;
+        return stats.rows;
+    }
+}
@@ -0,0 +1,15 @@
+package cbs;
+
+// Read side of a CdrStore dictionary: values by code, codes by value, and the sort rank of every code
+public interface CodeDictionary {
+
+    int size();
+
+    String get(int code);
+
+    // Code of s, or -1 when it has never been interned
+    int find(String s);
+
+    // rank[code] orders codes the way their values compare, so text keys sort as ints
+    int[] ranks();
+}
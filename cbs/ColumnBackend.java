@@ -0,0 +1,85 @@
+package cbs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+// Where a dataset's fixed-width columns (codes, epochs, durations, charges) live. HEAP keeps Java
+// arrays. OFF_HEAP keeps fixed-size pages of direct memory and MAPPED keeps them in memory-mapped
+// scratch files, which the OS can page out; both leave the garbage collector only a few large
+// objects to trace however many records there are. The Call ID dictionary, about one value per
+// record, keeps its UTF-8 bytes on the same pages; the other dictionaries, the display order and the
+// search indexes stay on the heap.
+//
+// Chosen once at startup with -Dcbs.columns=heap|offheap|mapped; mapped files go to -Dcbs.columns.dir
+// (default java.io.tmpdir) and are deleted as soon as they are mapped. Direct memory is capped by
+// -XX:MaxDirectMemorySize, which defaults to the maximum heap size.
+public enum ColumnBackend {
+    HEAP("heap"), OFF_HEAP("offheap"), MAPPED("mapped");
+
+    public static final String PROPERTY = "cbs.columns";
+    private static volatile ColumnBackend selected;
+
+    public final String id;
+
+    ColumnBackend(String id) { this.id = id; }
+
+    public static ColumnBackend parse(String id) {
+        for (ColumnBackend b : values()) if (b.id.equalsIgnoreCase(id.trim()) || b.name().equalsIgnoreCase(id.trim())) return b;
+        throw new IllegalArgumentException("Unknown column backend " + id + " (heap, offheap or mapped)");
+    }
+
+    // Backend for new datasets, from the cbs.columns property unless select() was called first
+    public static ColumnBackend selected() {
+        ColumnBackend b = selected;
+        if (b == null) {
+            String id = System.getProperty(PROPERTY);
+            selected = b = id == null ? HEAP : parse(id);
+        }
+        return b;
+    }
+
+    public static void select(ColumnBackend backend) {
+        selected = backend;
+    }
+
+    IntColumn ints(int capacity) {
+        return this == HEAP ? new IntColumn.Heap(new int[capacity]) : new IntColumn.Paged(this, capacity);
+    }
+
+    LongColumn longs(int capacity) {
+        return this == HEAP ? new LongColumn.Heap(new long[capacity]) : new LongColumn.Paged(this, capacity);
+    }
+
+    // One zeroed, native-order page of a paged column
+    ByteBuffer page(int bytes) {
+        ByteBuffer b;
+        if (this == OFF_HEAP) {
+            b = ByteBuffer.allocateDirect(bytes);
+        } else {
+            try {
+                Path dir = Paths.get(System.getProperty(PROPERTY + ".dir", System.getProperty("java.io.tmpdir")));
+                Path file = Files.createTempFile(dir, "cdr-column", ".bin");
+                try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    b = ch.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+                } finally {
+                    // the mapping keeps the space until it is unmapped by the collector
+                    Files.delete(file);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot create a mapped column page", e);
+            }
+        }
+        Metrics.COLUMN_PAGE_BYTES.add(bytes);
+        return b.order(ByteOrder.nativeOrder());
+    }
+
+    @Override public String toString() { return id.toLowerCase(Locale.ROOT); }
+}
@@ -0,0 +1,285 @@
+package cbs;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPOutputStream;
+
+// CSV output shared by the Swing export action and BillingBatch. Rows are encoded straight into one
+// reusable byte buffer - numbers, timestamps and amounts by hand, text with a single pass that both
+// encodes UTF-8 and decides on quoting - and the buffer goes to a FileChannel, or through gzip.
+public final class CsvExporter {
+
+    private static final int BUFFER = 1 << 20;
+    private static final int PROGRESS_ROWS = 1 << 16;
+
+    public interface Progress {
+        void update(int rowsDone, int rowsTotal);
+    }
+
+    private final FileChannel channel;
+    private final GZIPOutputStream gzip;
+    private byte[] buf = new byte[BUFFER];
+    private int pos;
+    private long written;
+    // Encoded bytes per numbers-dictionary code, filled on first use: senders and receivers repeat a lot
+    private byte[][] numberBytes;
+    // "yyyy-MM-dd " of the last day written, which consecutive records usually share
+    private long cachedDay = Long.MIN_VALUE;
+    private final byte[] dayBytes = new byte[11];
+
+    private CsvExporter(FileChannel channel, GZIPOutputStream gzip) {
+        this.channel = channel;
+        this.gzip = gzip;
+    }
+
+    // Gzipped when the file name ends in ".gz"
+    public static long write(CdrStore store, Path out) throws IOException {
+        return write(store, out, out.getFileName().toString().endsWith(".gz"), null, () -> false);
+    }
+
+    // All records in display order, with a Charge column once the store has been rated. Returns the
+    // uncompressed size. A cancelled or failed export deletes the partial file.
+    public static long write(CdrStore store, Path out, boolean gzip, Progress progress, BooleanSupplier cancelled)
+            throws IOException {
+        CdrEvents.Export event = new CdrEvents.Export();
+        event.begin();
+        long t0 = System.nanoTime();
+        boolean done = false;
+        try {
+            long written;
+            // The gzip stream is closed on every path so its Deflater's native memory is released
+            try (FileChannel ch = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+                 GZIPOutputStream gz = gzip ? new GZIPOutputStream(Channels.newOutputStream(ch), 1 << 16) : null) {
+                CsvExporter w = new CsvExporter(ch, gz);
+                w.rows(store, progress, cancelled);
+                w.flush();
+                written = w.written;
+            }
+            done = true;
+            Metrics.EXPORT.since(t0);
+            if (event.shouldCommit()) {
+                event.file = out.toString();
+                event.rows = store.size();
+                event.bytes = written;
+                event.commit();
+            }
+            return written;
+        } finally {
+            if (!done) Files.deleteIfExists(out);
+        }
+    }
+
+    private void rows(CdrStore store, Progress progress, BooleanSupplier cancelled) throws IOException {
+        boolean rated = store.isRated();
+        ascii(rated ? "CallID,Sender,Receiver,Timestamp,Duration,Charge\n" : "CallID,Sender,Receiver,Timestamp,Duration\n");
+        StringDictionary callIds = store.callIds();
+        numberBytes = new byte[store.numbers().size()][];
+        int n = store.size();
+        for (int p = 0; p < n; p++) {
+            if ((p & (PROGRESS_ROWS - 1)) == 0 && p > 0) {
+                if (cancelled.getAsBoolean()) throw new CancellationException("Export cancelled");
+                if (progress != null) progress.update(p, n);
+            }
+            int i = store.record(p);
+            text(callIds.get(store.callIdCode(i)));
+            put(',');
+            number(store, store.senderCode(i));
+            put(',');
+            number(store, store.receiverCode(i));
+            put(',');
+            if (store.hasTimestamp(i)) timestamp(store.epochSecond(i));
+            else text(store.timestamp(i));
+            put(',');
+            decimal(store.duration(i));
+            if (rated) {
+                put(',');
+                long cents = store.charge(i);
+                if (cents != CdrStore.UNRATED) amount(cents);
+            }
+            put('\n');
+        }
+        if (progress != null) progress.update(n, n);
+    }
+
+    private void number(CdrStore store, int code) throws IOException {
+        byte[] b = numberBytes[code];
+        if (b == null) {
+            int start = text(store.numbers().get(code));
+            numberBytes[code] = b = Arrays.copyOfRange(buf, start, pos);
+            return;
+        }
+        ensure(b.length);
+        System.arraycopy(b, 0, buf, pos, b.length);
+        pos += b.length;
+    }
+
+    // Encodes s as UTF-8, doubling quotes as it goes; if a quote, comma or line break turned up the
+    // field is shifted right by one and wrapped in quotes. Returns where the field starts.
+    private int text(String s) throws IOException {
+        int len = s.length();
+        ensure(3 * len + 2);
+        int start = pos;
+        byte[] b = buf;
+        int p = pos;
+        boolean quote = false;
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (c == '"') {
+                    quote = true;
+                    b[p++] = '"';
+                } else if (c == ',' || c == '\n' || c == '\r') {
+                    quote = true;
+                }
+                b[p++] = (byte) c;
+            } else if (c < 0x800) {
+                b[p++] = (byte) (0xc0 | c >> 6);
+                b[p++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                b[p++] = (byte) (0xf0 | cp >> 18);
+                b[p++] = (byte) (0x80 | cp >> 12 & 0x3f);
+                b[p++] = (byte) (0x80 | cp >> 6 & 0x3f);
+                b[p++] = (byte) (0x80 | cp & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                b[p++] = '?';
+            } else {
+                b[p++] = (byte) (0xe0 | c >> 12);
+                b[p++] = (byte) (0x80 | c >> 6 & 0x3f);
+                b[p++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        if (quote) {
+            System.arraycopy(b, start, b, start + 1, p - start);
+            b[start] = '"';
+            p += 1;
+            b[p++] = '"';
+        }
+        pos = p;
+        return start;
+    }
+
+    private void timestamp(long epochSecond) throws IOException {
+        long day = Math.floorDiv(epochSecond, 86400L);
+        if (day != cachedDay) {
+            long ymd = Timestamps.civil(day);
+            int year = (int) (ymd >> 9);
+            if (year < 1 || year > 9999) {
+                ascii(Timestamps.format(epochSecond));
+                return;
+            }
+            digits(dayBytes, 0, year, 4);
+            dayBytes[4] = '-';
+            digits(dayBytes, 5, (int) (ymd >> 5) & 0xf, 2);
+            dayBytes[7] = '-';
+            digits(dayBytes, 8, (int) ymd & 0x1f, 2);
+            dayBytes[10] = ' ';
+            cachedDay = day;
+        }
+        ensure(19);
+        System.arraycopy(dayBytes, 0, buf, pos, 11);
+        int secs = (int) (epochSecond - day * 86400L);
+        digits(buf, pos + 11, secs / 3600, 2);
+        buf[pos + 13] = ':';
+        digits(buf, pos + 14, secs / 60 % 60, 2);
+        buf[pos + 16] = ':';
+        digits(buf, pos + 17, secs % 60, 2);
+        pos += 19;
+    }
+
+    private static void digits(byte[] out, int at, int v, int width) {
+        for (int i = at + width - 1; i >= at; i--, v /= 10) out[i] = (byte) ('0' + v % 10);
+    }
+
+    // Long.toString without the String
+    private void decimal(long v) throws IOException {
+        ensure(20);
+        if (v < 0) {
+            buf[pos++] = '-';
+        } else {
+            v = -v;
+        }
+        // v is now <= 0, which also covers Long.MIN_VALUE
+        int end = pos + digitCount(v);
+        for (int i = end - 1; i >= pos; i--, v /= 10) buf[i] = (byte) ('0' - v % 10);
+        pos = end;
+    }
+
+    private static int digitCount(long negative) {
+        int n = 1;
+        while (negative <= -10) {
+            negative /= 10;
+            n++;
+        }
+        return n;
+    }
+
+    // Same text as Tariff.formatAmount
+    private void amount(long cents) throws IOException {
+        long abs = Math.abs(cents);
+        if (cents < 0) put('-');
+        decimal(abs / 100);
+        ensure(3);
+        buf[pos++] = '.';
+        buf[pos++] = (byte) ('0' + abs % 100 / 10);
+        buf[pos++] = (byte) ('0' + abs % 10);
+    }
+
+    private void ascii(String s) throws IOException {
+        ensure(s.length());
+        for (int i = 0; i < s.length(); i++) buf[pos++] = (byte) s.charAt(i);
+    }
+
+    private void put(char c) throws IOException {
+        if (pos == buf.length) flush();
+        buf[pos++] = (byte) c;
+    }
+
+    private void ensure(int n) throws IOException {
+        if (pos + n <= buf.length) return;
+        flush();
+        if (n > buf.length) buf = new byte[Math.max(n, buf.length * 2)];
+    }
+
+    private void flush() throws IOException {
+        if (pos == 0) return;
+        if (gzip != null) {
+            gzip.write(buf, 0, pos);
+        } else {
+            ByteBuffer bb = ByteBuffer.wrap(buf, 0, pos);
+            while (bb.hasRemaining()) channel.write(bb);
+        }
+        written += pos;
+        pos = 0;
+    }
+
+    // The first 'top' groups of a report, or all of them when top is 0
+    public static void writeReport(Aggregator.Report report, int top, Path out) throws IOException {
+        int rows = top == 0 ? report.size() : Math.min(top, report.size());
+        try (Writer w = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+            w.write(report.rated() ? "Group,Calls,TotalDuration,LongestCall,TotalCharge\n" : "Group,Calls,TotalDuration,LongestCall\n");
+            for (int i = 0; i < rows; i++) {
+                w.write(quote(report.label(i)) + "," + report.calls(i) + "," + report.totalDuration(i) + "," + report.maxDuration(i));
+                if (report.rated()) w.write("," + Tariff.formatAmount(report.totalCharge(i)));
+                w.write('\n');
+            }
+        }
+    }
+
+    static String quote(String s) {
+        if (s == null) return "";
+        if (s.contains(",") || s.contains("\"") || s.contains("\n") || s.contains("\r")) return "\"" + s.replace("\"", "\"\"") + "\"";
+        return s;
+    }
+}
@@ -0,0 +1,92 @@
+package cbs;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+// Growable int column of a CdrStore. Only one implementation is normally loaded per process, so the
+// JIT inlines get and set as if the store still held a plain array.
+abstract class IntColumn {
+
+    abstract int get(int i);
+    abstract void set(int i, int v);
+    abstract int capacity();
+
+    // Room for capacity values, keeping the current ones; may return this
+    abstract IntColumn grow(int capacity);
+
+    // An independent column with the same values and room for capacity, for copy-on-write
+    abstract IntColumn copy(int capacity);
+
+    // Bulk transfer of values [from, from + buffer.remaining()), used by snapshots
+    abstract void read(int from, IntBuffer dst);
+    abstract void write(int from, IntBuffer src);
+
+    static final class Heap extends IntColumn {
+        private final int[] a;
+
+        Heap(int[] a) { this.a = a; }
+
+        @Override int get(int i) { return a[i]; }
+        @Override void set(int i, int v) { a[i] = v; }
+        @Override int capacity() { return a.length; }
+        @Override IntColumn grow(int capacity) { return new Heap(Arrays.copyOf(a, capacity)); }
+        @Override IntColumn copy(int capacity) { return new Heap(Arrays.copyOf(a, capacity)); }
+        @Override void read(int from, IntBuffer dst) { dst.put(a, from, dst.remaining()); }
+        @Override void write(int from, IntBuffer src) { src.get(a, from, src.remaining()); }
+    }
+
+    // Fixed-size pages from a ColumnBackend; growing adds pages and never moves existing values
+    static final class Paged extends IntColumn {
+        static final int SHIFT = 20, PAGE = 1 << SHIFT, MASK = PAGE - 1;
+
+        private final ColumnBackend backend;
+        // Replaced, never modified, when the column grows; volatile because snapshots share the column
+        // with the live store and read it on other threads while it grows
+        private volatile IntBuffer[] pages = new IntBuffer[0];
+
+        Paged(ColumnBackend backend, int capacity) {
+            this.backend = backend;
+            grow(capacity);
+        }
+
+        @Override int get(int i) { return pages[i >>> SHIFT].get(i & MASK); }
+        @Override void set(int i, int v) { pages[i >>> SHIFT].put(i & MASK, v); }
+        @Override int capacity() { return (int) Math.min(Integer.MAX_VALUE, (long) pages.length << SHIFT); }
+
+        @Override
+        IntColumn grow(int capacity) {
+            int n = (int) (((long) capacity + MASK) >>> SHIFT);
+            if (n <= pages.length) return this;
+            IntBuffer[] p = Arrays.copyOf(pages, n);
+            for (int i = pages.length; i < n; i++) p[i] = backend.page(PAGE * 4).asIntBuffer();
+            pages = p;
+            return this;
+        }
+
+        @Override
+        IntColumn copy(int capacity) {
+            Paged c = new Paged(backend, Math.max(capacity, capacity()));
+            for (int i = 0; i < pages.length; i++) c.pages[i].put(0, pages[i], 0, PAGE);
+            return c;
+        }
+
+        @Override
+        void read(int from, IntBuffer dst) {
+            while (dst.hasRemaining()) {
+                int off = from & MASK, k = Math.min(dst.remaining(), PAGE - off);
+                dst.put(pages[from >>> SHIFT].slice(off, k));
+                from += k;
+            }
+        }
+
+        @Override
+        void write(int from, IntBuffer src) {
+            while (src.hasRemaining()) {
+                int off = from & MASK, k = Math.min(src.remaining(), PAGE - off);
+                pages[from >>> SHIFT].put(off, src, src.position(), k);
+                src.position(src.position() + k);
+                from += k;
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package cbs;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+// Growable long column of a CdrStore; see IntColumn
+abstract class LongColumn {
+
+    abstract long get(int i);
+    abstract void set(int i, long v);
+    abstract int capacity();
+    abstract LongColumn grow(int capacity);
+    abstract LongColumn copy(int capacity);
+    abstract void fill(int from, int to, long v);
+    abstract void read(int from, LongBuffer dst);
+    abstract void write(int from, LongBuffer src);
+
+    static final class Heap extends LongColumn {
+        private final long[] a;
+
+        Heap(long[] a) { this.a = a; }
+
+        @Override long get(int i) { return a[i]; }
+        @Override void set(int i, long v) { a[i] = v; }
+        @Override int capacity() { return a.length; }
+        @Override LongColumn grow(int capacity) { return new Heap(Arrays.copyOf(a, capacity)); }
+        @Override LongColumn copy(int capacity) { return new Heap(Arrays.copyOf(a, capacity)); }
+        @Override void fill(int from, int to, long v) { Arrays.fill(a, from, to, v); }
+        @Override void read(int from, LongBuffer dst) { dst.put(a, from, dst.remaining()); }
+        @Override void write(int from, LongBuffer src) { src.get(a, from, src.remaining()); }
+    }
+
+    static final class Paged extends LongColumn {
+        static final int SHIFT = 20, PAGE = 1 << SHIFT, MASK = PAGE - 1;
+
+        private final ColumnBackend backend;
+        // Replaced, never modified, when the column grows; volatile because snapshots share the column
+        // with the live store and read it on other threads while it grows
+        private volatile LongBuffer[] pages = new LongBuffer[0];
+
+        Paged(ColumnBackend backend, int capacity) {
+            this.backend = backend;
+            grow(capacity);
+        }
+
+        @Override long get(int i) { return pages[i >>> SHIFT].get(i & MASK); }
+        @Override void set(int i, long v) { pages[i >>> SHIFT].put(i & MASK, v); }
+        @Override int capacity() { return (int) Math.min(Integer.MAX_VALUE, (long) pages.length << SHIFT); }
+
+        @Override
+        LongColumn grow(int capacity) {
+            int n = (int) (((long) capacity + MASK) >>> SHIFT);
+            if (n <= pages.length) return this;
+            LongBuffer[] p = Arrays.copyOf(pages, n);
+            for (int i = pages.length; i < n; i++) p[i] = backend.page(PAGE * 8).asLongBuffer();
+            pages = p;
+            return this;
+        }
+
+        @Override
+        LongColumn copy(int capacity) {
+            Paged c = new Paged(backend, Math.max(capacity, capacity()));
+            for (int i = 0; i < pages.length; i++) c.pages[i].put(0, pages[i], 0, PAGE);
+            return c;
+        }
+
+        @Override
+        void fill(int from, int to, long v) {
+            for (int i = from; i < to; i++) set(i, v);
+        }
+
+        @Override
+        void read(int from, LongBuffer dst) {
+            while (dst.hasRemaining()) {
+                int off = from & MASK, k = Math.min(dst.remaining(), PAGE - off);
+                dst.put(pages[from >>> SHIFT].slice(off, k));
+                from += k;
+            }
+        }
+
+        @Override
+        void write(int from, LongBuffer src) {
+            while (src.hasRemaining()) {
+                int off = from & MASK, k = Math.min(src.remaining(), PAGE - off);
+                pages[from >>> SHIFT].put(off, src, src.position(), k);
+                src.position(src.position() + k);
+                from += k;
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package cbs;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Process-wide counters and timers for the hot paths, cheap enough to stay on in production. The
+// Diagnostics tab shows them live and BillingBatch --metrics dumps them; CdrEvents carries the same
+// operations to JFR recordings.
+public final class Metrics {
+
+    private static final List<Timer> TIMERS = new ArrayList<>();
+    private static final List<Counter> COUNTERS = new ArrayList<>();
+
+    public static final Counter ROWS_ACCEPTED = counter("load.rows.accepted");
+    public static final Counter ROWS_REJECTED = counter("load.rows.rejected");
+    public static final Counter ROWS_SUSPICIOUS = counter("load.rows.suspicious");
+    public static final Counter TIMESTAMPS_UNRECOGNISED = counter("load.timestamps.unrecognised");
+    public static final Counter BYTES_READ = counter("load.bytes");
+    // Bytes of column pages allocated off the heap or in mapped files (see ColumnBackend)
+    public static final Counter COLUMN_PAGE_BYTES = counter("columns.page.bytes");
+
+    public static final Timer LOAD = timer("load.total");
+    // Opening, sizing and cutting the file into line-aligned chunks
+    public static final Timer LOAD_READ = timer("load.read");
+    // Scanning and parsing, per chunk, summed over threads
+    public static final Timer LOAD_PARSE = timer("load.parse");
+    // Part of load.parse spent normalising timestamps, estimated from every 64th row
+    public static final Timer LOAD_TIMESTAMPS = timer("load.parse.timestamps");
+    // Appending parsed chunks to the dataset, on the loading thread
+    public static final Timer LOAD_MERGE = timer("load.merge");
+    // Moving the table to newly loaded rows, on the EDT; follow mode also appends its few rows there
+    public static final Timer LOAD_TABLE_REFRESH = timer("load.table.refresh");
+    public static final Timer SNAPSHOT_READ = timer("snapshot.read");
+    public static final Timer SNAPSHOT_WRITE = timer("snapshot.write");
+    public static final Timer SEARCH_CALL_ID = timer("search.callid");
+    public static final Timer SEARCH_PREFIX_INDEX = timer("search.prefix.index");
+    public static final Timer SEARCH_PREFIX = timer("search.prefix");
+    public static final Timer SEARCH_TIME_INDEX = timer("search.time.index");
+    public static final Timer SEARCH_TIME_RANGE = timer("search.time.range");
+    public static final Timer SEARCH_FILTER = timer("search.filter");
+    public static final Timer SORT = timer("sort");
+    public static final Timer RATE = timer("rate");
+    public static final Timer AGGREGATE = timer("aggregate");
+    public static final Timer EXPORT = timer("export");
+    // Delays of at least EDT_STALL_NANOS before the Swing event thread ran a posted task
+    public static final Timer EDT_STALL = timer("edt.stall");
+
+    public static final long EDT_STALL_NANOS = 100_000_000L;
+
+    private Metrics() {}
+
+    public static final class Counter {
+        public final String name;
+        private final LongAdder value = new LongAdder();
+
+        Counter(String name) { this.name = name; }
+
+        public void add(long n) { value.add(n); }
+        public long get() { return value.sum(); }
+    }
+
+    public static final class Timer {
+        public final String name;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        Timer(String name) { this.name = name; }
+
+        public void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        // Records the time since t0, a System.nanoTime() value, and returns it
+        public long since(long t0) {
+            long nanos = System.nanoTime() - t0;
+            record(nanos);
+            return nanos;
+        }
+
+        public long count() { return count.sum(); }
+        public long totalNanos() { return totalNanos.sum(); }
+        public long maxNanos() { return maxNanos.get(); }
+        public double meanMillis() { long c = count(); return c == 0 ? 0 : totalNanos() / 1e6 / c; }
+    }
+
+    private static Counter counter(String name) {
+        Counter c = new Counter(name);
+        COUNTERS.add(c);
+        return c;
+    }
+
+    private static Timer timer(String name) {
+        Timer t = new Timer(name);
+        TIMERS.add(t);
+        return t;
+    }
+
+    public static List<Counter> counters() { return Collections.unmodifiableList(COUNTERS); }
+    public static List<Timer> timers() { return Collections.unmodifiableList(TIMERS); }
+
+    public static void reset() {
+        for (Counter c : COUNTERS) c.value.reset();
+        for (Timer t : TIMERS) {
+            t.count.reset();
+            t.totalNanos.reset();
+            t.maxNanos.set(0);
+        }
+    }
+
+    public static void edtStall(long nanos) {
+        EDT_STALL.record(nanos);
+        CdrEvents.EdtStall e = new CdrEvents.EdtStall();
+        if (e.shouldCommit()) {
+            e.stall = nanos;
+            e.commit();
+        }
+    }
+
+    // Plain-text table of every counter and timer
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-30s %15s%n", "counter", "value"));
+        for (Counter c : COUNTERS) sb.append(String.format("%-30s %,15d%n", c.name, c.get()));
+        sb.append(String.format("%n%-30s %10s %12s %10s %10s%n", "timer", "count", "total ms", "mean ms", "max ms"));
+        for (Timer t : TIMERS) {
+            sb.append(String.format("%-30s %,10d %,12.1f %10.3f %,10.1f%n", t.name, t.count(), t.totalNanos() / 1e6,
+                    t.meanMillis(), t.maxNanos() / 1e6));
+        }
+        return sb.toString();
+    }
+
+    public static void dump(Path file) throws IOException {
+        try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write(report());
+        }
+    }
+}
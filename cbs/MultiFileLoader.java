@@ -0,0 +1,135 @@
+package cbs;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+// Loads many CDR files - a directory, a glob or an explicit list - as one dataset. Files are parsed
+// concurrently, each into its own CdrStore, and handed over in file order, so when mediation
+// delivered a call twice the file that sorts first keeps it. With more files than threads every file
+// gets one thread; with fewer, each file is also split into chunks.
+public final class MultiFileLoader {
+
+    public interface Listener {
+        // From a loading thread: bytes of that file parsed so far
+        void progress(int file, long bytesDone, long bytesTotal);
+
+        // On the calling thread, in file order
+        void fileLoaded(int file, CdrStore records, CdrLoader.Stats stats);
+    }
+
+    private static final class Loaded {
+        final CdrStore records;
+        final CdrLoader.Stats stats;
+
+        Loaded(CdrStore records, CdrLoader.Stats stats) {
+            this.records = records; this.stats = stats;
+        }
+    }
+
+    private MultiFileLoader() {}
+
+    // The regular files of a directory, the files matching a glob such as /data/cdr/2024-06-*/node*.csv,
+    // or a single file; sorted by path. Hidden files and quarantine files (*.rejects.csv) are left out.
+    public static List<Path> resolve(String spec) throws IOException {
+        Path path = Paths.get(spec);
+        if (Files.isRegularFile(path)) return Collections.singletonList(path);
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> dir = Files.newDirectoryStream(path)) {
+                for (Path p : dir) if (isCdrFile(p)) files.add(p);
+            }
+        } else {
+            // walk from the deepest directory without glob characters, only as deep as the pattern reaches
+            int glob = indexOfGlob(spec);
+            if (glob < 0) throw new IOException("No such file or directory: " + spec);
+            int sep = Math.max(spec.lastIndexOf('/', glob), spec.lastIndexOf(java.io.File.separatorChar, glob));
+            Path root = Paths.get(sep < 0 ? "" : spec.substring(0, sep + 1));
+            int depth = spec.contains("**") ? Integer.MAX_VALUE : Paths.get(spec.substring(sep + 1)).getNameCount();
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + spec);
+            try (Stream<Path> walk = Files.walk(root, depth)) {
+                walk.filter(p -> matcher.matches(p) && isCdrFile(p)).forEach(files::add);
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private static boolean isCdrFile(Path p) {
+        String name = p.getFileName().toString();
+        return Files.isRegularFile(p) && !name.startsWith(".") && !name.endsWith(".rejects.csv");
+    }
+
+    private static int indexOfGlob(String spec) {
+        for (int i = 0; i < spec.length(); i++) if ("*?[{".indexOf(spec.charAt(i)) >= 0) return i;
+        return -1;
+    }
+
+    // Parses files on up to 'parallelism' threads. Only a few files ahead of the one being handed over are
+    // parsed at a time, so a slow file early in the list does not make the others pile up in memory.
+    // Quarantined lines of a file go to quarantineFile.apply(file), if quarantineFile is not null.
+    // Returns the totals over all files.
+    public static CdrLoader.Stats load(List<Path> files, int parallelism, Listener listener, BooleanSupplier cancelled,
+                                       Function<Path, Path> quarantineFile) throws IOException {
+        long t0 = System.nanoTime();
+        int n = files.size();
+        int threads = Math.max(1, Math.min(parallelism, n));
+        int perFile = Math.max(1, parallelism / Math.max(1, n));
+        int ahead = threads * 2;
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "cdr-multiload");
+            t.setDaemon(true);
+            return t;
+        });
+        List<CdrLoader.Stats> parts = new ArrayList<>(n);
+        try {
+            List<Future<Loaded>> results = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                while (results.size() < Math.min(n, i + ahead)) {
+                    int idx = results.size();
+                    results.add(pool.submit(() -> loadOne(idx, files.get(idx), perFile, listener, cancelled, quarantineFile)));
+                }
+                Loaded loaded = CdrLoader.await(results.get(i));
+                results.set(i, null);
+                if (cancelled.getAsBoolean()) throw new CancellationException("Load cancelled");
+                listener.fileLoaded(i, loaded.records, loaded.stats);
+                parts.add(loaded.stats);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return CdrLoader.Stats.sum(parts, System.nanoTime() - t0);
+    }
+
+    private static Loaded loadOne(int idx, Path file, int threads, Listener listener, BooleanSupplier cancelled,
+                                  Function<Path, Path> quarantineFile) throws IOException {
+        // the first chunk becomes the file's store; with one thread per file it is the only one
+        CdrStore[] records = new CdrStore[1];
+        QuarantineWriter quarantine = quarantineFile == null ? null : new QuarantineWriter(quarantineFile.apply(file));
+        CdrLoader.Stats stats;
+        try {
+            stats = CdrLoader.load(file, threads, CdrStore::new, (chunk, done, total) -> {
+                if (records[0] == null) records[0] = chunk;
+                else records[0].appendAll(chunk);
+                listener.progress(idx, done, total);
+            }, cancelled, false, quarantine);
+        } finally {
+            if (quarantine != null) quarantine.close();
+        }
+        return new Loaded(records[0] == null ? new CdrStore() : records[0], stats);
+    }
+}
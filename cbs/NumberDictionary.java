@@ -0,0 +1,323 @@
+package cbs;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Dictionary of sender and receiver numbers. Numbers are canonicalised as they are interned: a leading
+// '+' or international prefix is dropped and, once a country code is configured, a national number's
+// trunk prefix is replaced by it. So +260971234567, 00260971234567 and (with country 260) 0971234567
+// are one code, and equality, grouping, sorting and search all work on the canonical number.
+//
+// A canonical number of at most 17 digits is held as one packed long - the digits and their count, so
+// leading zeros survive - not as a String, and the loader interns it straight from the file's bytes: a
+// number seen before costs one hash probe and no allocation. Anything else (letters, spaces, longer
+// values) is kept as text, exactly as written. A number reads back in the form it was first written in,
+// which the code remembers in a byte; rows that wrote it another way show that first form too.
+//
+// The plan comes from -Dcbs.numbers.country (digits, e.g. 260; unset, national numbers stay as they
+// are), -Dcbs.numbers.trunk (national prefix, default 0) and -Dcbs.numbers.idd (international prefix,
+// default 00; empty to keep it).
+public final class NumberDictionary implements CodeDictionary {
+
+    static final int MAX_DIGITS = 17;
+    // Packed layout: bits 57-61 digit count, bits 0-56 the digits as a number. pack() also returns the
+    // written form in bits 62-63, which is not part of the key.
+    private static final int COUNT_SHIFT = 57, FORM_SHIFT = 62;
+    private static final long VALUE = (1L << COUNT_SHIFT) - 1;
+    private static final long KEY = (1L << FORM_SHIFT) - 1;
+    // Key of a value held as text
+    private static final long TEXT = -1L;
+    // How a packed number was written: as its canonical digits, after '+', after the international
+    // prefix, or with the trunk prefix in place of the country code
+    private static final int DIGITS = 0, PLUS = 1, IDD = 2, TRUNK = 3;
+    private static final long[] POW10 = new long[MAX_DIGITS + 1];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i <= MAX_DIGITS; i++) POW10[i] = POW10[i - 1] * 10;
+    }
+
+    private final byte[] country;
+    private final byte[] trunk;
+    private final byte[] idd;
+    private long[] keys = new long[16];
+    // Text per code, null for packed codes; allocated with the first value that does not pack
+    private String[] texts;
+    // Written form per packed code; allocated with the first number not written as its canonical digits
+    private byte[] forms;
+    // Open addressing over codes: slot holds code + 1, 0 marks an empty slot
+    private int[] table = new int[32];
+    private int size;
+    // Set on snapshots: keys, texts and forms are shared with the live dictionary and copied before the first write
+    private boolean shared;
+    // Sort position of every code by canonical order; cached until a new value is interned
+    private int[] ranks;
+
+    public NumberDictionary() {
+        this(System.getProperty("cbs.numbers.country", ""), System.getProperty("cbs.numbers.trunk", "0"),
+                System.getProperty("cbs.numbers.idd", "00"));
+    }
+
+    NumberDictionary(String country, String trunk, String idd) {
+        this.country = plan(country);
+        this.trunk = plan(trunk);
+        this.idd = plan(idd);
+    }
+
+    private NumberDictionary(NumberDictionary plan) {
+        country = plan.country;
+        trunk = plan.trunk;
+        idd = plan.idd;
+    }
+
+    private static byte[] plan(String digits) {
+        String d = digits.trim();
+        for (int i = 0; i < d.length(); i++) {
+            if (d.charAt(i) < '0' || d.charAt(i) > '9') throw new IllegalArgumentException("Not a digit prefix: " + digits);
+        }
+        return d.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Override public int size() { return size; }
+
+    @Override
+    public String get(int code) {
+        long key = keys[code];
+        return key == TEXT ? texts[code] : display(key, forms == null ? DIGITS : forms[code]);
+    }
+
+    public int intern(String s) {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        return intern(b, 0, b.length);
+    }
+
+    // Interns the UTF-8 value in b[off, off + len) without decoding it when it packs
+    public int intern(byte[] b, int off, int len) {
+        long p = pack(b, off, len, false);
+        return p == TEXT ? internText(new String(b, off, len, StandardCharsets.UTF_8)) : internKey(p & KEY, (int) (p >>> FORM_SHIFT));
+    }
+
+    // Interns value code of other, as used when appending one store to another
+    int intern(NumberDictionary other, int code) {
+        long key = other.keys[code];
+        return key == TEXT ? internText(other.texts[code]) : internKey(key, other.forms == null ? DIGITS : other.forms[code]);
+    }
+
+    // Adds the value as the next code even when an equal number is already there, for a CdrSnapshot whose
+    // columns hold the codes it was written with, whatever numbering plan this process has
+    int restore(byte[] b, int off, int len) {
+        long p = pack(b, off, len, false);
+        String text = p == TEXT ? new String(b, off, len, StandardCharsets.UTF_8) : null;
+        long key = p == TEXT ? TEXT : p & KEY;
+        if (table == null) rehash();
+        int mask = table.length - 1;
+        int slot = hash(key, text) & mask;
+        while (table[slot] != 0) slot = (slot + 1) & mask;
+        return add(slot, key, text, p == TEXT ? DIGITS : (int) (p >>> FORM_SHIFT));
+    }
+
+    @Override
+    public int find(String s) {
+        if (table == null) rehash();
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        long p = pack(b, 0, b.length, false);
+        long key = p == TEXT ? TEXT : p & KEY;
+        int mask = table.length - 1;
+        for (int slot = hash(key, s) & mask, e; (e = table[slot]) != 0; slot = (slot + 1) & mask) {
+            if (matches(e - 1, key, s)) return e - 1;
+        }
+        return -1;
+    }
+
+    private int internKey(long key, int form) {
+        if (table == null) rehash();
+        int mask = table.length - 1;
+        int slot = hash(key, null) & mask;
+        for (int e; (e = table[slot]) != 0; slot = (slot + 1) & mask) {
+            if (keys[e - 1] == key) return e - 1;
+        }
+        return add(slot, key, null, form);
+    }
+
+    private int internText(String s) {
+        if (table == null) rehash();
+        int mask = table.length - 1;
+        int slot = hash(TEXT, s) & mask;
+        for (int e; (e = table[slot]) != 0; slot = (slot + 1) & mask) {
+            if (matches(e - 1, TEXT, s)) return e - 1;
+        }
+        return add(slot, TEXT, s, DIGITS);
+    }
+
+    private int add(int slot, long key, String text, int form) {
+        if (size == keys.length || shared) {
+            int cap = Math.max(16, size + (size >> 1));
+            keys = Arrays.copyOf(keys, cap);
+            if (texts != null) texts = Arrays.copyOf(texts, cap);
+            if (forms != null) forms = Arrays.copyOf(forms, cap);
+            shared = false;
+        }
+        if (text != null && texts == null) texts = new String[keys.length];
+        if (form != DIGITS && forms == null) forms = new byte[keys.length];
+        int code = size++;
+        keys[code] = key;
+        if (text != null) texts[code] = text;
+        if (form != DIGITS) forms[code] = (byte) form;
+        table[slot] = code + 1;
+        if (size * 2 > table.length) rehash();
+        return code;
+    }
+
+    private boolean matches(int code, long key, String s) {
+        return keys[code] == key && (key != TEXT || texts[code].equals(s));
+    }
+
+    @Override
+    public int[] ranks() {
+        int[] r = ranks;
+        if (r != null && r.length == size) return r;
+        int n = size;
+        int[] codes = new int[n];
+        for (int i = 0; i < n; i++) codes[i] = i;
+        CdrSorter.sort(codes, this::compare);
+        r = new int[n];
+        for (int i = 0; i < n; i++) r[codes[i]] = i;
+        ranks = r;
+        return r;
+    }
+
+    // String order of the canonical values of two codes; packed values compare without being unpacked
+    private int compare(int a, int b) {
+        long x = keys[a], y = keys[b];
+        if (x == TEXT || y == TEXT) return canonical(a).compareTo(canonical(b));
+        // the empty number first
+        int c = Boolean.compare(count(x) != 0, count(y) != 0);
+        if (c != 0) return c;
+        // digits left-aligned, so "12" < "120" < "13" as in text; equal means one is a prefix of the other
+        c = Long.compare((x & VALUE) * POW10[MAX_DIGITS - count(x)], (y & VALUE) * POW10[MAX_DIGITS - count(y)]);
+        return c != 0 ? c : Integer.compare(count(x), count(y));
+    }
+
+    private String canonical(int code) {
+        long key = keys[code];
+        return key == TEXT ? texts[code] : digits(key);
+    }
+
+    private static int count(long key) {
+        return (int) (key >>> COUNT_SHIFT) & 31;
+    }
+
+    // Table over all codes: does the value equal value ignoring case, or start with it when prefix is set.
+    // Packed numbers are compared canonically, on their digits, without being unpacked.
+    boolean[] matching(String value, boolean prefix) {
+        boolean[] m = new boolean[size];
+        byte[] b = value.getBytes(StandardCharsets.UTF_8);
+        long p = pack(b, 0, b.length, prefix);
+        long key = p == TEXT ? TEXT : p & KEY;
+        for (int code = 0; code < m.length; code++) {
+            long k = keys[code];
+            if (k == TEXT) {
+                String t = texts[code];
+                m[code] = prefix ? t.regionMatches(true, 0, value, 0, value.length()) : t.equalsIgnoreCase(value);
+            } else if (key != TEXT) {
+                m[code] = prefix ? startsWith(k, key) : k == key;
+            }
+            // otherwise the query has a character no packed number has
+        }
+        return m;
+    }
+
+    private static boolean startsWith(long key, long prefix) {
+        int extra = count(key) - count(prefix);
+        return extra >= 0 && (key & VALUE) / POW10[extra] == (prefix & VALUE);
+    }
+
+    // Read-only view of the values interned so far, safe to hand to another thread through an executor
+    NumberDictionary snapshot() {
+        NumberDictionary d = new NumberDictionary(this);
+        d.keys = keys;
+        d.texts = texts;
+        d.forms = forms;
+        d.size = size;
+        d.table = null;
+        d.shared = true;
+        return d;
+    }
+
+    // Doubles the table, or rebuilds it for a snapshot that shares keys but not the table
+    private void rehash() {
+        int[] t = new int[table != null ? table.length * 2 : Math.max(32, Integer.highestOneBit(Math.max(1, size)) << 2)];
+        int mask = t.length - 1;
+        for (int code = 0; code < size; code++) {
+            int slot = hash(keys[code], keys[code] == TEXT ? texts[code] : null) & mask;
+            while (t[slot] != 0) slot = (slot + 1) & mask;
+            t[slot] = code + 1;
+        }
+        table = t;
+    }
+
+    private static int hash(long key, String text) {
+        return key == TEXT ? StringDictionary.mix(text.hashCode()) : StringDictionary.mix(Long.hashCode(key * 0x9E3779B97F4A7C15L));
+    }
+
+    // Canonical key of the value in b[off, off + len) with its written form in bits 62-63, or TEXT. With
+    // partial, as for a prefix query, a prefix with nothing after it still stands for the numbers it starts:
+    // "+" or "00" for all of them and the trunk prefix for those of the country.
+    long pack(byte[] b, int off, int len, boolean partial) {
+        int i = off, end = off + len;
+        int form = DIGITS;
+        if (len > 0 && b[off] == '+') {
+            if (len == 1 && !partial) return TEXT;
+            form = PLUS;
+            i++;
+        }
+        for (int k = i; k < end; k++) {
+            if (b[k] < '0' || b[k] > '9') return TEXT;
+        }
+        byte[] lead = null;
+        if (form == DIGITS) {
+            int min = partial ? 0 : 1;
+            if (idd.length > 0 && startsWith(b, i, end, idd) && end - i - idd.length >= min) {
+                form = IDD;
+                i += idd.length;
+            } else if (country.length > 0 && trunk.length > 0 && startsWith(b, i, end, trunk) && end - i - trunk.length >= min) {
+                form = TRUNK;
+                i += trunk.length;
+                lead = country;
+            }
+        }
+        int count = (lead == null ? 0 : lead.length) + end - i;
+        if (count > MAX_DIGITS) return TEXT;
+        long v = 0;
+        if (lead != null) for (byte d : lead) v = v * 10 + (d - '0');
+        for (; i < end; i++) v = v * 10 + (b[i] - '0');
+        return (long) form << FORM_SHIFT | (long) count << COUNT_SHIFT | v;
+    }
+
+    private static boolean startsWith(byte[] b, int from, int end, byte[] prefix) {
+        if (end - from < prefix.length) return false;
+        for (int k = 0; k < prefix.length; k++) if (b[from + k] != prefix[k]) return false;
+        return true;
+    }
+
+    // The number as it was first written
+    private String display(long key, int form) {
+        String d = digits(key);
+        switch (form) {
+            case PLUS: return "+" + d;
+            case IDD: return new String(idd, StandardCharsets.US_ASCII) + d;
+            case TRUNK: return new String(trunk, StandardCharsets.US_ASCII) + d.substring(country.length);
+            default: return d;
+        }
+    }
+
+    static String digits(long key) {
+        char[] c = new char[count(key)];
+        long v = key & VALUE;
+        for (int i = c.length - 1; i >= 0; i--) {
+            c[i] = (char) ('0' + v % 10);
+            v /= 10;
+        }
+        return new String(c);
+    }
+}
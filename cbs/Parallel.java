@@ -0,0 +1,39 @@
+package cbs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Splits [0, n) into contiguous segments and runs them on the common ForkJoinPool
+final class Parallel {
+
+    interface RangeFunction<T> {
+        T apply(int from, int to);
+    }
+
+    private Parallel() {}
+
+    // One result per segment, in segment order; a single segment runs on the calling thread
+    static <T> List<T> mapRanges(int n, int minSegment, RangeFunction<T> fn) {
+        int threads = ForkJoinPool.getCommonPoolParallelism();
+        int parts = (int) Math.max(1, Math.min(threads * 4L, n / Math.max(1, minSegment)));
+        List<T> out = new ArrayList<>(parts);
+        if (parts == 1 || threads <= 1) {
+            out.add(fn.apply(0, n));
+            return out;
+        }
+        List<ForkJoinTask<T>> tasks = new ArrayList<>(parts);
+        for (int i = 0; i < parts; i++) {
+            int from = (int) ((long) n * i / parts);
+            int to = (int) ((long) n * (i + 1) / parts);
+            tasks.add(ForkJoinTask.adapt(() -> fn.apply(from, to)));
+        }
+        for (ForkJoinTask<T> t : ForkJoinTask.invokeAll(tasks)) out.add(t.join());
+        return out;
+    }
+
+    static void forRanges(int n, int minSegment, RangeFunction<Void> fn) {
+        mapRanges(n, minSegment, fn);
+    }
+}
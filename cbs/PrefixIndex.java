@@ -0,0 +1,118 @@
+package cbs;
+
+import java.util.BitSet;
+import java.util.Locale;
+
+// Case-insensitive prefix lookup over Call ID, sender and receiver. Each dictionary is kept as its
+// distinct values in sorted lower-case order with a posting list of records per value, so a query is
+// a binary search plus a walk over the matching values. Records appended after the build are
+// checked one by one until the index is rebuilt.
+public final class PrefixIndex {
+
+    private final CdrStore store;
+    private final int indexed;
+    private final Postings callIds;
+    private final Postings numbers;
+
+    private PrefixIndex(CdrStore store) {
+        this.store = store;
+        this.indexed = store.size();
+        int[] idCodes = new int[indexed];
+        int[] senderCodes = new int[indexed];
+        int[] receiverCodes = new int[indexed];
+        for (int r = 0; r < indexed; r++) {
+            idCodes[r] = store.callIdCode(r);
+            senderCodes[r] = store.senderCode(r);
+            receiverCodes[r] = store.receiverCode(r);
+        }
+        callIds = new Postings(store.callIds(), idCodes, null);
+        numbers = new Postings(store.numbers(), senderCodes, receiverCodes);
+    }
+
+    // Builds over a snapshot; the index only reads the records present at this point
+    public static PrefixIndex build(CdrStore snapshot) {
+        long t0 = System.nanoTime();
+        PrefixIndex index = new PrefixIndex(snapshot);
+        Metrics.SEARCH_PREFIX_INDEX.since(t0);
+        return index;
+    }
+
+    public int coverage() { return indexed; }
+
+    // Records of current (the indexed store or a later snapshot of it) whose Call ID, sender or
+    // receiver starts with prefix, ignoring case
+    public BitSet match(String prefix, CdrStore current) {
+        CdrEvents.Search event = new CdrEvents.Search();
+        event.begin();
+        long t0 = System.nanoTime();
+        BitSet hits = new BitSet(current.size());
+        String folded = fold(prefix);
+        callIds.collect(folded, hits);
+        numbers.collect(folded, hits);
+        int n = prefix.length();
+        for (int r = indexed; r < current.size(); r++) {
+            if (current.callID(r).regionMatches(true, 0, prefix, 0, n)
+                    || current.sender(r).regionMatches(true, 0, prefix, 0, n)
+                    || current.receiver(r).regionMatches(true, 0, prefix, 0, n)) {
+                hits.set(r);
+            }
+        }
+        Metrics.SEARCH_PREFIX.since(t0);
+        if (event.shouldCommit()) {
+            event.method = "prefix";
+            event.query = prefix;
+            event.matches = hits.cardinality();
+            event.commit();
+        }
+        return hits;
+    }
+
+    static String fold(String s) {
+        return s.toLowerCase(Locale.ROOT);
+    }
+
+    // Sorted folded values of one dictionary and, per value, the records that hold it (CSR layout)
+    private static final class Postings {
+        private final String[] keys;
+        private final int[] codes;
+        private final int[] start;
+        private final int[] records;
+
+        Postings(CodeDictionary dict, int[] column, int[] second) {
+            int n = dict.size();
+            String[] folded = new String[n];
+            for (int c = 0; c < n; c++) folded[c] = fold(dict.get(c));
+            int[] perm = new int[n];
+            for (int i = 0; i < n; i++) perm[i] = i;
+            CdrSorter.sort(perm, (a, b) -> folded[a].compareTo(folded[b]));
+            keys = new String[n];
+            for (int i = 0; i < n; i++) keys[i] = folded[perm[i]];
+            codes = perm;
+
+            start = new int[n + 1];
+            for (int r = 0; r < column.length; r++) {
+                start[column[r] + 1]++;
+                if (second != null && second[r] != column[r]) start[second[r] + 1]++;
+            }
+            for (int c = 0; c < n; c++) start[c + 1] += start[c];
+            records = new int[start[n]];
+            int[] fill = java.util.Arrays.copyOf(start, n);
+            for (int r = 0; r < column.length; r++) {
+                records[fill[column[r]]++] = r;
+                if (second != null && second[r] != column[r]) records[fill[second[r]]++] = r;
+            }
+        }
+
+        void collect(String folded, BitSet hits) {
+            int lo = 0, hi = keys.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (keys[mid].compareTo(folded) < 0) lo = mid + 1; else hi = mid;
+            }
+            for (int i = lo; i < keys.length && keys[i].startsWith(folded); i++) {
+                int code = codes[i];
+                for (int p = start[code]; p < start[code + 1]; p++) hits.set(records[p]);
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package cbs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Streams quarantined CDR lines to a CSV file of line,reason,text. The loading thread only formats
+// entries into batches; a background thread does the file I/O, so a dirty feed costs the load little
+// more than a clean one. The file is created with the first entry: a clean load leaves none behind.
+public final class QuarantineWriter implements CdrLoader.RejectListener, AutoCloseable {
+
+    private static final int BATCH_CHARS = 1 << 16;
+    // Marks the end of the queue for the writer thread
+    private static final String END = new String("");
+
+    private final Path file;
+    private final boolean append;
+    // A few batches in flight at most: a slow disk holds the load up instead of filling the heap
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(8);
+    private StringBuilder batch = new StringBuilder();
+    private Thread writer;
+    private volatile IOException failure;
+    private long entries;
+
+    public QuarantineWriter(Path file) {
+        this(file, false);
+    }
+
+    // With append, entries go after those already in the file, e.g. for successive polls of a CdrTailer
+    public QuarantineWriter(Path file, boolean append) {
+        this.file = file;
+        this.append = append;
+    }
+
+    public Path file() { return file; }
+    // Lines written so far; the file exists once this is non-zero
+    public long entries() { return entries; }
+
+    @Override
+    public void rejected(long line, RejectReason reason, String text) {
+        if (writer == null) start();
+        entries++;
+        batch.append(line).append(',').append(reason.name()).append(',').append(CsvExporter.quote(text)).append('\n');
+        if (batch.length() >= BATCH_CHARS) hand(batch.toString());
+    }
+
+    // Hands what is pending to the writer thread, which writes it out without waiting for a full batch;
+    // for a writer kept open across the polls of a CdrTailer
+    public void flush() {
+        if (batch.length() > 0) hand(batch.toString());
+    }
+
+    // Writes what is pending and waits for the writer thread; rethrows its I/O error, if any
+    @Override
+    public void close() throws IOException {
+        if (writer == null) return;
+        if (batch.length() > 0) hand(batch.toString());
+        hand(END);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing " + file);
+        }
+        writer = null;
+        if (failure != null) throw failure;
+    }
+
+    private void start() {
+        writer = new Thread(this::drain, "cdr-quarantine");
+        writer.setDaemon(true);
+        writer.start();
+        if (!append || !Files.exists(file)) batch.append("line,reason,text\n");
+    }
+
+    private void hand(String text) {
+        batch = new StringBuilder();
+        try {
+            queue.put(text);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // After a write error the rest of the queue is still taken, so the loading thread never blocks
+    private void drain() {
+        OpenOption[] options = append
+                ? new OpenOption[]{StandardOpenOption.CREATE, StandardOpenOption.APPEND}
+                : new OpenOption[]{StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE};
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, options)) {
+            for (String text; (text = queue.take()) != END; ) {
+                out.write(text);
+                // caught up: what was handed over so far reaches the file
+                if (queue.isEmpty()) out.flush();
+            }
+        } catch (IOException e) {
+            failure = e;
+            drainAfterFailure();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainAfterFailure() {
+        try {
+            while (queue.take() != END) { }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
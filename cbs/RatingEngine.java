@@ -0,0 +1,85 @@
+package cbs;
+
+import java.util.List;
+
+// Prices every record of a store against a Tariff in one parallel pass over the primitive columns.
+// Destination prices are resolved once per distinct receiver number, not once per call.
+public final class RatingEngine {
+
+    private static final int MIN_SEGMENT = 1 << 16;
+
+    public static final class Result {
+        // Charge per record in minor units, CdrStore.UNRATED where no price applied, in a column of the
+        // rated store's backend so an off-heap dataset is not priced into a heap array
+        final LongColumn charges;
+        // Records rated, the size of the store when it was rated
+        final int rows;
+        public final long rated;
+        public final long unrated;
+        public final long totalCents;
+        public final long nanos;
+
+        Result(LongColumn charges, int rows, long rated, long unrated, long totalCents, long nanos) {
+            this.charges = charges; this.rows = rows; this.rated = rated; this.unrated = unrated;
+            this.totalCents = totalCents; this.nanos = nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d calls rated in %d ms, total %s%s", rated, nanos / 1_000_000,
+                    Tariff.formatAmount(totalCents), unrated > 0 ? String.format(" (%,d unrated)", unrated) : "");
+        }
+    }
+
+    private RatingEngine() {}
+
+    // Rates store (typically a snapshot) without modifying it; install the result with CdrStore.setCharges
+    public static Result rate(CdrStore store, Tariff tariff) {
+        CdrEvents.Rate event = new CdrEvents.Rate();
+        event.begin();
+        long t0 = System.nanoTime();
+        NumberDictionary numbers = store.numbers();
+        int[] plan = new int[numbers.size()];
+        for (int code = 0; code < plan.length; code++) plan[code] = tariff.rateFor(numbers.get(code));
+
+        int n = store.size();
+        LongColumn charges = store.backend().longs(n);
+        List<long[]> parts = Parallel.mapRanges(n, MIN_SEGMENT, (from, to) -> {
+            long rated = 0, unrated = 0, total = 0;
+            boolean[] peak = tariff.peak;
+            for (int r = from; r < to; r++) {
+                int p = plan[store.receiverCode(r)];
+                long epoch = store.epochSecond(r);
+                if (p < 0 || epoch == Timestamps.INVALID) {
+                    charges.set(r, CdrStore.UNRATED);
+                    unrated++;
+                    continue;
+                }
+                long ms = store.duration(r);
+                long seconds = ms <= 0 ? 0 : tariff.perMinute ? (ms + 59_999) / 60_000 * 60 : (ms + 999) / 1000;
+                int minuteOfWeek = (int) Math.floorMod(Math.floorDiv(epoch, 86400L) + 3, 7L) * 1440
+                        + (int) (Math.floorMod(epoch, 86400L) / 60);
+                long price = peak[minuteOfWeek] ? tariff.peakRates[p] : tariff.offPeakRates[p];
+                // seconds * price-per-minute / 60 in RATE_SCALE units, as cents rounded half up
+                long cents = (seconds * price + 3000) / 6000;
+                charges.set(r, cents);
+                total += cents;
+                rated++;
+            }
+            return new long[]{rated, unrated, total};
+        });
+        long rated = 0, unrated = 0, total = 0;
+        for (long[] part : parts) {
+            rated += part[0];
+            unrated += part[1];
+            total += part[2];
+        }
+        long nanos = Metrics.RATE.since(t0);
+        if (event.shouldCommit()) {
+            event.tariff = tariff.name();
+            event.rows = n;
+            event.commit();
+        }
+        return new Result(charges, n, rated, unrated, total, nanos);
+    }
+}
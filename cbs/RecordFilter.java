@@ -0,0 +1,479 @@
+package cbs;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+
+// Compound filter typed in the filter bar, e.g.
+//
+//   sender = 260971234567 and duration > 600000 and date = yesterday
+//   (receiver = 26096* or receiver = 26095*) and not charge < 0.50
+//
+// Fields: callid, sender, receiver, number (sender or receiver), duration (ms, or with an s, m or h
+// suffix), time or date (a timestamp, or yyyy-MM-dd, today or yesterday for the whole day) and charge
+// (an amount; unrated records never match). Text fields take = and != and compare ignoring case, a
+// trailing * matching a prefix; the others take = != < <= > >=. Quote values that contain spaces.
+// Terms combine with and, or, not (also &&, ||, !) and parentheses.
+//
+// Each comparison is bound to the store once - text to a set of dictionary codes, the rest to a long
+// range - and the expression is evaluated a column at a time into 64-record bitmap words, over
+// segments of the records in parallel. A parsed filter is immutable and can be shared between threads.
+public final class RecordFilter {
+
+    // Words of 64 records per parallel segment
+    private static final int MIN_SEGMENT_WORDS = 1 << 10;
+    private static final int MIN_TABLE_SEGMENT = 1 << 14;
+
+    private enum Column { CALL_ID, SENDER, RECEIVER, DURATION, TIME, CHARGE }
+
+    private final String text;
+    private final Node root;
+
+    private RecordFilter(String text, Node root) {
+        this.text = text;
+        this.root = root;
+    }
+
+    // Throws IllegalArgumentException naming the offending position when text is not a valid filter
+    public static RecordFilter parse(String text) {
+        Parser p = new Parser(text);
+        Node root = p.or();
+        if (p.peek() != null) throw p.error("Unexpected '" + p.peek().text + "'");
+        return new RecordFilter(text.trim(), root);
+    }
+
+    // Records of snapshot that match, as record numbers
+    public BitSet match(CdrStore snapshot) {
+        CdrEvents.Search event = new CdrEvents.Search();
+        event.begin();
+        long t0 = System.nanoTime();
+        Node bound = root.bind(snapshot);
+        int n = snapshot.size();
+        long[] words = new long[(n + 63) >>> 6];
+        Parallel.forRanges(words.length, MIN_SEGMENT_WORDS, (wFrom, wTo) -> {
+            long[] out = new long[wTo - wFrom];
+            bound.eval(snapshot, wFrom << 6, Math.min(n, wTo << 6), out);
+            System.arraycopy(out, 0, words, wFrom, out.length);
+            return null;
+        });
+        BitSet hits = BitSet.valueOf(words);
+        Metrics.SEARCH_FILTER.since(t0);
+        if (event.shouldCommit()) {
+            event.method = "filter";
+            event.query = text;
+            event.matches = hits.cardinality();
+            event.commit();
+        }
+        return hits;
+    }
+
+    // One record, for rows appended after match() ran
+    public boolean test(CdrStore store, int record) {
+        return root.test(store, record);
+    }
+
+    @Override public String toString() { return text; }
+
+    private abstract static class Node {
+        // Node with its dictionary lookups resolved against store
+        abstract Node bind(CdrStore store);
+
+        // Sets the bits of the matching records in [from, to) in out, word 0 holding records from to from + 63;
+        // from is a multiple of 64 and out starts zeroed
+        abstract void eval(CdrStore store, int from, int to, long[] out);
+
+        abstract boolean test(CdrStore store, int r);
+    }
+
+    private static final class And extends Node {
+        final List<Node> terms;
+
+        And(List<Node> terms) { this.terms = terms; }
+
+        @Override
+        Node bind(CdrStore store) {
+            List<Node> b = new ArrayList<>(terms.size());
+            for (Node t : terms) b.add(t.bind(store));
+            return new And(b);
+        }
+
+        @Override
+        void eval(CdrStore store, int from, int to, long[] out) {
+            terms.get(0).eval(store, from, to, out);
+            long[] tmp = new long[out.length];
+            for (int i = 1; i < terms.size(); i++) {
+                boolean any = false;
+                for (long w : out) if (w != 0) { any = true; break; }
+                if (!any) return;
+                Arrays.fill(tmp, 0L);
+                terms.get(i).eval(store, from, to, tmp);
+                for (int w = 0; w < out.length; w++) out[w] &= tmp[w];
+            }
+        }
+
+        @Override
+        boolean test(CdrStore store, int r) {
+            for (Node t : terms) if (!t.test(store, r)) return false;
+            return true;
+        }
+    }
+
+    private static final class Or extends Node {
+        final List<Node> terms;
+
+        Or(List<Node> terms) { this.terms = terms; }
+
+        @Override
+        Node bind(CdrStore store) {
+            List<Node> b = new ArrayList<>(terms.size());
+            for (Node t : terms) b.add(t.bind(store));
+            return new Or(b);
+        }
+
+        @Override
+        void eval(CdrStore store, int from, int to, long[] out) {
+            terms.get(0).eval(store, from, to, out);
+            long[] tmp = new long[out.length];
+            for (int i = 1; i < terms.size(); i++) {
+                Arrays.fill(tmp, 0L);
+                terms.get(i).eval(store, from, to, tmp);
+                for (int w = 0; w < out.length; w++) out[w] |= tmp[w];
+            }
+        }
+
+        @Override
+        boolean test(CdrStore store, int r) {
+            for (Node t : terms) if (t.test(store, r)) return true;
+            return false;
+        }
+    }
+
+    private static final class Not extends Node {
+        final Node term;
+
+        Not(Node term) { this.term = term; }
+
+        @Override Node bind(CdrStore store) { return new Not(term.bind(store)); }
+
+        @Override
+        void eval(CdrStore store, int from, int to, long[] out) {
+            term.eval(store, from, to, out);
+            for (int w = 0; w < out.length; w++) out[w] = ~out[w];
+            int tail = (to - from) & 63;
+            if (tail != 0) out[out.length - 1] &= (1L << tail) - 1;
+        }
+
+        @Override boolean test(CdrStore store, int r) { return !term.test(store, r); }
+    }
+
+    // Text comparison; bound to the codes of the store's dictionary that satisfy it
+    private static final class Text extends Node {
+        final Column column;
+        final String value;
+        final boolean prefix;
+
+        Text(Column column, String value, boolean prefix) {
+            this.column = column;
+            this.value = value;
+            this.prefix = prefix;
+        }
+
+        boolean matches(String s) {
+            return prefix ? s.regionMatches(true, 0, value, 0, value.length()) : s.equalsIgnoreCase(value);
+        }
+
+        @Override
+        Node bind(CdrStore store) {
+            // a snapshot's dictionary has no hash table of its own, so a scan beats find(); numbers compare packed
+            if (column != Column.CALL_ID) return new Codes(this, store.numbers().matching(value, prefix));
+            StringDictionary d = store.callIds();
+            boolean[] match = new boolean[d.size()];
+            Parallel.forRanges(match.length, MIN_TABLE_SEGMENT, (from, to) -> {
+                for (int c = from; c < to; c++) match[c] = matches(d.get(c));
+                return null;
+            });
+            return new Codes(this, match);
+        }
+
+        @Override void eval(CdrStore store, int from, int to, long[] out) { bind(store).eval(store, from, to, out); }
+
+        @Override
+        boolean test(CdrStore store, int r) {
+            return matches(column == Column.CALL_ID ? store.callID(r) : column == Column.SENDER ? store.sender(r) : store.receiver(r));
+        }
+    }
+
+    // A bound Text: which codes of the store's dictionary satisfy it
+    private static final class Codes extends Node {
+        final Text text;
+        final boolean[] match;
+
+        Codes(Text text, boolean[] match) {
+            this.text = text;
+            this.match = match;
+        }
+
+        @Override Node bind(CdrStore store) { return text.bind(store); }
+
+        @Override
+        void eval(CdrStore store, int from, int to, long[] out) {
+            IntColumn c = text.column == Column.CALL_ID ? store.callIdColumn()
+                    : text.column == Column.SENDER ? store.senderColumn() : store.receiverColumn();
+            boolean[] m = match;
+            for (int r = from; r < to; r++) if (m[c.get(r)]) out[(r - from) >>> 6] |= 1L << r;
+        }
+
+        @Override boolean test(CdrStore store, int r) { return text.test(store, r); }
+    }
+
+    // lo <= value <= hi on a long column
+    private static final class Range extends Node {
+        final Column column;
+        final long lo, hi;
+
+        Range(Column column, long lo, long hi) {
+            this.column = column;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override Node bind(CdrStore store) { return this; }
+
+        @Override
+        void eval(CdrStore store, int from, int to, long[] out) {
+            LongColumn c = column == Column.DURATION ? store.durationColumn()
+                    : column == Column.TIME ? store.epochColumn() : store.chargeColumn();
+            if (c == null || lo > hi) return;
+            long base = lo, span = hi - lo;
+            // one unsigned compare tests both ends
+            for (int r = from; r < to; r++) {
+                if (Long.compareUnsigned(c.get(r) - base, span) <= 0) out[(r - from) >>> 6] |= 1L << r;
+            }
+        }
+
+        @Override
+        boolean test(CdrStore store, int r) {
+            long v = column == Column.DURATION ? store.duration(r) : column == Column.TIME ? store.epochSecond(r) : store.charge(r);
+            return lo <= hi && v >= lo && v <= hi;
+        }
+    }
+
+    private static final class Token {
+        final String text;
+        final int pos;
+        final boolean quoted;
+
+        Token(String text, int pos, boolean quoted) {
+            this.text = text;
+            this.pos = pos;
+            this.quoted = quoted;
+        }
+
+        boolean is(String s) { return !quoted && text.equalsIgnoreCase(s); }
+    }
+
+    private static final class Parser {
+        private static final String OPERATORS = "=!<>";
+        private static final String SPECIAL = "()=!<>&|\"'";
+
+        private final List<Token> tokens = new ArrayList<>();
+        private int next;
+
+        Parser(String s) {
+            int i = 0, n = s.length();
+            while (i < n) {
+                char c = s.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '(' || c == ')') {
+                    tokens.add(new Token(String.valueOf(c), i++, false));
+                } else if (c == '&' || c == '|') {
+                    if (i + 1 >= n || s.charAt(i + 1) != c) throw new IllegalArgumentException("Expected " + c + c + " at column " + (i + 1));
+                    tokens.add(new Token(c == '&' ? "and" : "or", i, false));
+                    i += 2;
+                } else if (OPERATORS.indexOf(c) >= 0) {
+                    int start = i++;
+                    if (i < n && (s.charAt(i) == '=' || (c == '<' && s.charAt(i) == '>'))) i++;
+                    tokens.add(new Token(s.substring(start, i), start, false));
+                } else if (c == '"' || c == '\'') {
+                    int end = s.indexOf(c, i + 1);
+                    if (end < 0) throw new IllegalArgumentException("Unclosed quote at column " + (i + 1));
+                    tokens.add(new Token(s.substring(i + 1, end), i, true));
+                    i = end + 1;
+                } else {
+                    int start = i;
+                    while (i < n && !Character.isWhitespace(s.charAt(i)) && SPECIAL.indexOf(s.charAt(i)) < 0) i++;
+                    tokens.add(new Token(s.substring(start, i), start, false));
+                }
+            }
+            if (tokens.isEmpty()) throw new IllegalArgumentException("Empty filter");
+        }
+
+        Token peek() { return next < tokens.size() ? tokens.get(next) : null; }
+
+        Token take(String what) {
+            Token t = peek();
+            if (t == null) throw new IllegalArgumentException("Expected " + what + " at the end");
+            next++;
+            return t;
+        }
+
+        IllegalArgumentException error(String message) {
+            Token t = peek();
+            return new IllegalArgumentException(message + (t == null ? " at the end" : " at column " + (t.pos + 1)));
+        }
+
+        Node or() {
+            List<Node> terms = new ArrayList<>();
+            terms.add(and());
+            while (peek() != null && peek().is("or")) {
+                next++;
+                terms.add(and());
+            }
+            return terms.size() == 1 ? terms.get(0) : new Or(terms);
+        }
+
+        Node and() {
+            List<Node> terms = new ArrayList<>();
+            terms.add(unary());
+            while (peek() != null && peek().is("and")) {
+                next++;
+                terms.add(unary());
+            }
+            return terms.size() == 1 ? terms.get(0) : new And(terms);
+        }
+
+        Node unary() {
+            Token t = take("a condition");
+            if (t.is("not") || t.is("!")) return new Not(unary());
+            if (t.is("(")) {
+                Node inner = or();
+                if (peek() == null || !peek().is(")")) throw error("Expected )");
+                next++;
+                return inner;
+            }
+            next--;
+            return comparison();
+        }
+
+        Node comparison() {
+            Token field = take("a field");
+            Token op = take("an operator after " + field.text);
+            if (op.quoted || !isOperator(op.text)) {
+                next--;
+                throw error("Expected = != < <= > or >= after " + field.text);
+            }
+            Token value = take("a value after " + field.text + " " + op.text);
+            if (!value.quoted && SPECIAL.indexOf(value.text.charAt(0)) >= 0) {
+                next--;
+                throw error("Expected a value after " + field.text + " " + op.text);
+            }
+            String o = op.text.equals("==") ? "=" : op.text.equals("<>") ? "!=" : op.text;
+            String v = value.text.trim();
+            switch (field.text.toLowerCase(Locale.ROOT)) {
+                case "callid": case "call_id": case "id": return text(Column.CALL_ID, field, o, v);
+                case "sender": case "from": return text(Column.SENDER, field, o, v);
+                case "receiver": case "to": return text(Column.RECEIVER, field, o, v);
+                case "number": {
+                    Node either = new Or(List.of(text(Column.SENDER, field, "=", v), text(Column.RECEIVER, field, "=", v)));
+                    if (o.equals("=")) return either;
+                    if (o.equals("!=")) return new Not(either);
+                    throw textOperator(field);
+                }
+                case "duration": case "dur": {
+                    long ms = duration(v, value);
+                    return range(Column.DURATION, o, ms, ms, Long.MIN_VALUE);
+                }
+                case "time": case "timestamp": case "date": {
+                    long[] span = time(v, value);
+                    // raw-text timestamps are kept below CdrStore.RAW_LIMIT and never match a comparison
+                    return range(Column.TIME, o, span[0], span[1], CdrStore.RAW_LIMIT + 1);
+                }
+                case "charge": {
+                    long cents = amount(v, value);
+                    return range(Column.CHARGE, o, cents, cents, 0);
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown field '" + field.text + "' at column " + (field.pos + 1)
+                            + " (callid, sender, receiver, number, duration, time, date or charge)");
+            }
+        }
+
+        private static boolean isOperator(String s) {
+            switch (s) {
+                case "=": case "==": case "!=": case "<>": case "<": case "<=": case ">": case ">=": return true;
+                default: return false;
+            }
+        }
+
+        private static Node text(Column column, Token field, String op, String v) {
+            boolean prefix = v.endsWith("*");
+            Node t = new Text(column, prefix ? v.substring(0, v.length() - 1) : v, prefix);
+            if (op.equals("=")) return t;
+            if (op.equals("!=")) return new Not(t);
+            throw textOperator(field);
+        }
+
+        private static IllegalArgumentException textOperator(Token field) {
+            return new IllegalArgumentException(field.text + " only takes = or != (column " + (field.pos + 1) + ")");
+        }
+
+        // The value's own span is [vLo, vHi]: one instant, or a whole day; floor keeps out the column's
+        // markers for missing values
+        private static Node range(Column column, String op, long vLo, long vHi, long floor) {
+            long lo = Long.MIN_VALUE, hi = Long.MAX_VALUE;
+            switch (op) {
+                case "=": case "!=": lo = vLo; hi = vHi; break;
+                case "<": if (vLo == Long.MIN_VALUE) return new Range(column, 1, 0); hi = vLo - 1; break;
+                case "<=": hi = vHi; break;
+                case ">": if (vHi == Long.MAX_VALUE) return new Range(column, 1, 0); lo = vHi + 1; break;
+                default: lo = vLo;
+            }
+            Node r = new Range(column, Math.max(lo, floor), hi);
+            return op.equals("!=") ? new Not(r) : r;
+        }
+
+        private static long duration(String v, Token at) {
+            String s = v.toLowerCase(Locale.ROOT);
+            long unit = 1;
+            if (s.endsWith("ms")) s = s.substring(0, s.length() - 2);
+            else if (s.endsWith("s")) { unit = 1000; s = s.substring(0, s.length() - 1); }
+            else if (s.endsWith("m")) { unit = 60_000; s = s.substring(0, s.length() - 1); }
+            else if (s.endsWith("h")) { unit = 3_600_000; s = s.substring(0, s.length() - 1); }
+            try {
+                return Math.multiplyExact(Long.parseLong(s.trim()), unit);
+            } catch (NumberFormatException | ArithmeticException e) {
+                throw new IllegalArgumentException("Not a duration: " + v + " at column " + (at.pos + 1) + " (ms, or e.g. 90s, 10m, 2h)");
+            }
+        }
+
+        private static long[] time(String v, Token at) {
+            long t = Timestamps.parse(v);
+            if (t != Timestamps.INVALID) return new long[]{t, t};
+            LocalDate day;
+            String s = v.toLowerCase(Locale.ROOT);
+            try {
+                day = s.equals("today") ? LocalDate.now() : s.equals("yesterday") ? LocalDate.now().minusDays(1) : LocalDate.parse(v);
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Not a date or time: " + v + " at column " + (at.pos + 1)
+                        + " (yyyy-MM-dd, \"yyyy-MM-dd HH:mm:ss\", today or yesterday)");
+            }
+            long start = day.toEpochDay() * 86400L;
+            return new long[]{start, start + 86399};
+        }
+
+        private static long amount(String v, Token at) {
+            try {
+                return new BigDecimal(v).movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+            } catch (NumberFormatException | ArithmeticException e) {
+                throw new IllegalArgumentException("Not an amount: " + v + " at column " + (at.pos + 1));
+            }
+        }
+    }
+}
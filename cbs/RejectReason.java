@@ -0,0 +1,22 @@
+package cbs;
+
+// Why a CDR line was quarantined. Rejected lines are not loaded; suspicious ones are loaded as they
+// are and only reported.
+public enum RejectReason {
+    TOO_FEW_FIELDS("too few fields", true),
+    BAD_DURATION("duration is not a whole number", true),
+    BAD_TIMESTAMP("unrecognised timestamp", false),
+    NEGATIVE_DURATION("negative duration", false),
+    EMPTY_CALL_ID("missing Call ID", false),
+    EXTRA_FIELDS("more than five fields", false);
+
+    public final String label;
+    public final boolean rejected;
+
+    RejectReason(String label, boolean rejected) {
+        this.label = label;
+        this.rejected = rejected;
+    }
+
+    @Override public String toString() { return label; }
+}
@@ -0,0 +1,233 @@
+package cbs;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Append-only String <-> int code table; each distinct value is stored once, except in paged mode
+public final class StringDictionary implements CodeDictionary {
+
+    private static final int PAGE_SHIFT = 20, PAGE = 1 << PAGE_SHIFT, PAGE_MASK = PAGE - 1;
+
+    private String[] values = new String[16];
+    // Open addressing over codes: slot holds code + 1, 0 marks an empty slot
+    private int[] table = new int[32];
+    private int size;
+    // Set on snapshots: values is shared with the live dictionary and is copied before the first write
+    private boolean shared;
+    // Sort position of every code by String order; cached until a new value is interned
+    private int[] ranks;
+    // Set when loaded from a CdrSnapshot: UTF-8 bytes of every value, decoded into values on first get
+    private ByteBuffer encoded;
+    private int[] offsets;
+    // Paged mode, for the Call IDs of a dataset on a paged ColumnBackend: no Strings, value i being the
+    // UTF-8 bytes from ends[i - 1] (0 for the first) to ends[i] in fixed-size backend pages. Call IDs are
+    // nearly all distinct, so there is no hash table either: intern appends, and a value seen before
+    // gets a second code. Pages below used are never written again.
+    private ColumnBackend backend;
+    private ByteBuffer[] pages;
+    private LongColumn ends;
+    private long used;
+
+    public StringDictionary() {}
+
+    // Paged unless backend is HEAP
+    StringDictionary(ColumnBackend backend) {
+        if (backend == ColumnBackend.HEAP) return;
+        this.backend = backend;
+        pages = new ByteBuffer[0];
+        ends = backend.longs(16);
+        values = null;
+        table = null;
+    }
+
+    // Dictionary over encoded values, value i being bytes offsets[i] to offsets[i + 1]
+    StringDictionary(ByteBuffer encoded, int[] offsets) {
+        this.encoded = encoded;
+        this.offsets = offsets;
+        size = offsets.length - 1;
+        values = new String[Math.max(16, size)];
+        table = null;
+    }
+
+    public int size() { return size; }
+
+    public String get(int code) {
+        if (pages != null) return new String(bytes(code), StandardCharsets.UTF_8);
+        String v = values[code];
+        return v != null || encoded == null ? v : decode(code);
+    }
+
+    private String decode(int code) {
+        int from = offsets[code], len = offsets[code + 1] - from;
+        byte[] b = new byte[len];
+        encoded.get(from, b, 0, len);
+        String v = new String(b, StandardCharsets.UTF_8);
+        values[code] = v;
+        return v;
+    }
+
+    // Hashing and ranking need every value, so lazily decoded dictionaries are completed first
+    private void decodeAll() {
+        for (int code = 0; code < size; code++) if (values[code] == null) decode(code);
+        encoded = null;
+        offsets = null;
+    }
+
+    public int intern(String s) {
+        if (pages != null) return append(s.getBytes(StandardCharsets.UTF_8));
+        if (encoded != null) decodeAll();
+        if (table == null) rehash();
+        int mask = table.length - 1;
+        int slot = mix(s.hashCode()) & mask;
+        for (int e; (e = table[slot]) != 0; slot = (slot + 1) & mask) {
+            if (values[e - 1].equals(s)) return e - 1;
+        }
+        if (size == values.length || shared) {
+            values = java.util.Arrays.copyOf(values, Math.max(16, size + (size >> 1)));
+            shared = false;
+        }
+        int code = size++;
+        values[code] = s;
+        table[slot] = code + 1;
+        if (size * 2 > table.length) rehash();
+        return code;
+    }
+
+    // rank[code] orders codes the way their values compare, so text keys sort as ints
+    public int[] ranks() {
+        int[] r = ranks;
+        if (r != null && r.length == size) return r;
+        if (pages != null) return ranks = pagedRanks();
+        if (encoded != null) decodeAll();
+        int n = size;
+        String[] v = values;
+        int[] codes = new int[n];
+        for (int i = 0; i < n; i++) codes[i] = i;
+        CdrSorter.sort(codes, (a, b) -> v[a].compareTo(v[b]));
+        r = new int[n];
+        for (int i = 0; i < n; i++) r[codes[i]] = i;
+        ranks = r;
+        return r;
+    }
+
+    // Ranks without decoding: unsigned UTF-8 byte order is String order for everything but characters
+    // beyond U+FFFF against U+E000-U+FFFF. A value held under several codes gets one rank.
+    private int[] pagedRanks() {
+        int n = size;
+        int[] codes = new int[n];
+        for (int i = 0; i < n; i++) codes[i] = i;
+        CdrSorter.sort(codes, this::compareBytes);
+        int[] r = new int[n];
+        for (int i = 0; i < n; i++) r[codes[i]] = i > 0 && compareBytes(codes[i - 1], codes[i]) == 0 ? r[codes[i - 1]] : i;
+        return r;
+    }
+
+    // Read-only view of the values interned so far, safe to hand to another thread through an executor
+    StringDictionary snapshot() {
+        StringDictionary d = new StringDictionary();
+        d.values = values;
+        d.encoded = encoded;
+        d.offsets = offsets;
+        d.backend = backend;
+        d.pages = pages;
+        d.ends = ends;
+        d.used = used;
+        d.size = size;
+        d.table = null;
+        d.shared = true;
+        return d;
+    }
+
+    // Code of s, or -1 when it has never been interned
+    public int find(String s) {
+        if (pages != null) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            for (int code = 0; code < size; code++) if (Arrays.equals(bytes(code), b)) return code;
+            return -1;
+        }
+        if (encoded != null) decodeAll();
+        if (table == null) rehash();
+        int mask = table.length - 1;
+        for (int slot = mix(s.hashCode()) & mask, e; (e = table[slot]) != 0; slot = (slot + 1) & mask) {
+            if (values[e - 1].equals(s)) return e - 1;
+        }
+        return -1;
+    }
+
+    // Doubles the table, or rebuilds it for a snapshot that shares values but not the table
+    private void rehash() {
+        int[] t = new int[table != null ? table.length * 2 : Math.max(32, Integer.highestOneBit(Math.max(1, size)) << 2)];
+        int mask = t.length - 1;
+        for (int code = 0; code < size; code++) {
+            int slot = mix(values[code].hashCode()) & mask;
+            while (t[slot] != 0) slot = (slot + 1) & mask;
+            t[slot] = code + 1;
+        }
+        table = t;
+    }
+
+    // Appends a value in paged mode and returns its new code
+    int append(byte[] b) {
+        if (shared) unshare();
+        if (size == ends.capacity()) ends = ends.grow(size + 1);
+        long end = used + b.length;
+        if (end > (long) pages.length << PAGE_SHIFT) {
+            ByteBuffer[] p = Arrays.copyOf(pages, (int) ((end + PAGE_MASK) >>> PAGE_SHIFT));
+            for (int i = pages.length; i < p.length; i++) p[i] = backend.page(PAGE);
+            pages = p;
+        }
+        for (int i = 0; i < b.length; ) {
+            int off = (int) ((used + i) & PAGE_MASK), k = Math.min(b.length - i, PAGE - off);
+            pages[(int) ((used + i) >>> PAGE_SHIFT)].put(off, b, i, k);
+            i += k;
+        }
+        used = end;
+        ends.set(size, end);
+        return size++;
+    }
+
+    private byte[] bytes(int code) {
+        long from = code == 0 ? 0 : ends.get(code - 1);
+        byte[] b = new byte[(int) (ends.get(code) - from)];
+        for (int i = 0; i < b.length; ) {
+            int off = (int) ((from + i) & PAGE_MASK), k = Math.min(b.length - i, PAGE - off);
+            pages[(int) ((from + i) >>> PAGE_SHIFT)].get(off, b, i, k);
+            i += k;
+        }
+        return b;
+    }
+
+    private int compareBytes(int a, int b) {
+        long i = a == 0 ? 0 : ends.get(a - 1), aEnd = ends.get(a);
+        long j = b == 0 ? 0 : ends.get(b - 1), bEnd = ends.get(b);
+        for (; i < aEnd && j < bEnd; i++, j++) {
+            int c = Integer.compare(byteAt(i), byteAt(j));
+            if (c != 0) return c;
+        }
+        return Long.compare(aEnd - i, bEnd - j);
+    }
+
+    private int byteAt(long at) {
+        return pages[(int) (at >>> PAGE_SHIFT)].get((int) (at & PAGE_MASK)) & 0xff;
+    }
+
+    // A paged snapshot shares the live pages. The full ones never change; the one being filled, and any
+    // the live dictionary has yet to fill, are replaced before the snapshot's first append.
+    private void unshare() {
+        int full = (int) (used >>> PAGE_SHIFT), tail = (int) (used & PAGE_MASK);
+        ByteBuffer[] p = Arrays.copyOf(pages, tail == 0 ? full : full + 1);
+        if (tail != 0) {
+            p[full] = backend.page(PAGE);
+            p[full].put(0, pages[full], 0, tail);
+        }
+        pages = p;
+        ends = ends.copy(size);
+        shared = false;
+    }
+
+    static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,164 @@
+package cbs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+
+// Rating configuration read from a local tariff file:
+//
+//   rounding = minute                 # or second: how call durations are rounded up before charging
+//   peak = Mon-Fri 07:00-19:00        # one or more peak windows; all other times are off-peak
+//   rate.default = 1.50, 0.75         # peak and off-peak price per minute for any destination
+//   rate.26599 = 1.20, 0.60           # per-destination price, picked by longest receiver prefix
+//
+// Prices have up to four decimals; charges are whole minor units (cents), rounded half up per call.
+public final class Tariff {
+
+    static final int RATE_SCALE = 10_000;
+    private static final String[] DAYS = {"mon", "tue", "wed", "thu", "fri", "sat", "sun"};
+
+    final boolean perMinute;
+    // Indexed by day-of-week (Mon = 0) * 1440 + minute of day
+    final boolean[] peak;
+    // Destination prefixes sorted longest first, with their prices in RATE_SCALE units per minute
+    final String[] prefixes;
+    final long[] peakRates;
+    final long[] offPeakRates;
+    // Price index for numbers no prefix matches, -1 when the tariff has no default
+    final int defaultRate;
+    private final String source;
+
+    private Tariff(boolean perMinute, boolean[] peak, TreeMap<String, long[]> rates, long[] defaults, String source) {
+        this.perMinute = perMinute;
+        this.peak = peak;
+        this.source = source;
+        List<String> keys = new ArrayList<>(rates.keySet());
+        keys.sort((a, b) -> b.length() - a.length());
+        int n = keys.size() + (defaults != null ? 1 : 0);
+        prefixes = keys.toArray(new String[0]);
+        peakRates = new long[n];
+        offPeakRates = new long[n];
+        for (int i = 0; i < keys.size(); i++) {
+            peakRates[i] = rates.get(keys.get(i))[0];
+            offPeakRates[i] = rates.get(keys.get(i))[1];
+        }
+        defaultRate = defaults != null ? n - 1 : -1;
+        if (defaults != null) {
+            peakRates[n - 1] = defaults[0];
+            offPeakRates[n - 1] = defaults[1];
+        }
+    }
+
+    public static Tariff load(Path file) throws IOException {
+        boolean perMinute = true;
+        TreeMap<String, long[]> rates = new TreeMap<>();
+        long[] defaults = null;
+        boolean[] peak = new boolean[7 * 1440];
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        for (int ln = 1; ln <= lines.size(); ln++) {
+            String line = lines.get(ln - 1);
+            int hash = line.indexOf('#');
+            if (hash >= 0) line = line.substring(0, hash);
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            int eq = line.indexOf('=');
+            if (eq < 0) throw error(file, ln, "expected key = value");
+            String key = line.substring(0, eq).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(eq + 1).trim();
+            if (key.equals("rounding")) {
+                String v = value.toLowerCase(Locale.ROOT);
+                if (!v.equals("minute") && !v.equals("second")) throw error(file, ln, "rounding must be 'second' or 'minute'");
+                perMinute = v.equals("minute");
+            } else if (key.equals("peak")) {
+                addPeak(peak, file, ln, value);
+            } else if (key.startsWith("rate.")) {
+                String dest = key.substring(5).trim();
+                String[] parts = value.split(",");
+                if (parts.length != 2) throw error(file, ln, "expected 'peak price, off-peak price'");
+                long[] pair = {price(file, ln, parts[0]), price(file, ln, parts[1])};
+                if (dest.equals("default")) defaults = pair;
+                else if (dest.isEmpty() || !dest.chars().allMatch(Character::isDigit)) throw error(file, ln, "destination prefix must be digits");
+                else rates.put(dest, pair);
+            } else {
+                throw error(file, ln, "unknown key '" + key + "'");
+            }
+        }
+        if (rates.isEmpty() && defaults == null) throw new IOException(file.getFileName() + ": no rates defined");
+        return new Tariff(perMinute, peak, rates, defaults, file.getFileName().toString());
+    }
+
+    // "Mon-Fri 07:00-19:00", "Sat 08:00-12:00" or just "07:00-19:00" for every day
+    private static void addPeak(boolean[] peak, Path file, int ln, String spec) throws IOException {
+        String[] parts = spec.trim().split("\\s+");
+        if (parts.length > 2) throw error(file, ln, "expected '[days] HH:mm-HH:mm'");
+        int firstDay = 0, lastDay = 6;
+        if (parts.length == 2) {
+            String[] days = parts[0].toLowerCase(Locale.ROOT).split("-");
+            firstDay = day(file, ln, days[0]);
+            lastDay = days.length > 1 ? day(file, ln, days[1]) : firstDay;
+        }
+        String[] times = parts[parts.length - 1].split("-");
+        if (times.length != 2) throw error(file, ln, "expected HH:mm-HH:mm");
+        int from = minuteOfDay(file, ln, times[0]);
+        int to = minuteOfDay(file, ln, times[1]);
+        for (int d = firstDay; ; d = (d + 1) % 7) {
+            // a window ending at or before its start runs past midnight into the next day
+            int end = to > from ? to : to + 1440;
+            for (int m = from; m < end; m++) peak[(d * 1440 + m) % peak.length] = true;
+            if (d == lastDay) break;
+        }
+    }
+
+    private static int day(Path file, int ln, String s) throws IOException {
+        for (int i = 0; i < DAYS.length; i++) if (DAYS[i].equals(s)) return i;
+        throw error(file, ln, "unknown day '" + s + "'");
+    }
+
+    private static int minuteOfDay(Path file, int ln, String s) throws IOException {
+        String[] hm = s.trim().split(":");
+        try {
+            int h = Integer.parseInt(hm[0]);
+            int m = hm.length > 1 ? Integer.parseInt(hm[1]) : 0;
+            if (hm.length <= 2 && h >= 0 && h <= 24 && m >= 0 && m < 60 && h * 60 + m <= 1440) return h * 60 + m;
+        } catch (NumberFormatException ignored) {}
+        throw error(file, ln, "bad time '" + s.trim() + "'");
+    }
+
+    private static long price(Path file, int ln, String s) throws IOException {
+        try {
+            java.math.BigDecimal v = new java.math.BigDecimal(s.trim());
+            if (v.signum() >= 0 && v.scale() <= 4) return v.movePointRight(4).longValueExact();
+        } catch (NumberFormatException | ArithmeticException ignored) {}
+        throw error(file, ln, "bad price '" + s.trim() + "' (up to 4 decimals)");
+    }
+
+    private static IOException error(Path file, int ln, String msg) {
+        return new IOException(file.getFileName() + ":" + ln + ": " + msg);
+    }
+
+    // Price index for a phone number by longest digit prefix, or defaultRate
+    int rateFor(String number) {
+        StringBuilder digits = new StringBuilder(number.length());
+        for (int i = 0; i < number.length(); i++) {
+            char c = number.charAt(i);
+            if (c >= '0' && c <= '9') digits.append(c);
+        }
+        for (int i = 0; i < prefixes.length; i++) {
+            if (digits.length() >= prefixes[i].length() && digits.indexOf(prefixes[i]) == 0) return i;
+        }
+        return defaultRate;
+    }
+
+    public String name() { return source; }
+
+    // Minor units as "123.45"
+    public static String formatAmount(long cents) {
+        long abs = Math.abs(cents);
+        return (cents < 0 ? "-" : "") + abs / 100 + "." + (abs % 100 < 10 ? "0" : "") + abs % 100;
+    }
+}
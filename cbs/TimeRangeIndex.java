@@ -0,0 +1,113 @@
+package cbs;
+
+import java.util.Arrays;
+
+// "Calls between T1 and T2" lookup. The records with a recognised timestamp are kept as two parallel
+// arrays sorted by epoch second, so a query is two binary searches plus a copy of the k records in
+// range: O(log n + k), with no per-record objects. The same records are also grouped by sender, each
+// group in time order, so a query for one sender's calls is O(log n + k) too. Records appended after
+// the build are checked one by one until the index is rebuilt.
+public final class TimeRangeIndex {
+
+    private final int indexed;
+    private final long[] epochs;
+    private final int[] records;
+    // records regrouped by sender code: sender c's calls are bySender[senderStart[c], senderStart[c + 1])
+    private final int[] senderStart;
+    private final int[] bySender;
+
+    private TimeRangeIndex(CdrStore store) {
+        indexed = store.size();
+        int[] perm = new int[indexed];
+        for (int i = 0; i < indexed; i++) perm[i] = i;
+        CdrSorter.sort(perm, CdrSorter.order(store, CdrSorter.Key.TIMESTAMP, false));
+        // unrecognised timestamps are INVALID, the smallest long, so they all sort first
+        int skip = 0;
+        while (skip < indexed && !store.hasTimestamp(perm[skip])) skip++;
+        records = Arrays.copyOfRange(perm, skip, indexed);
+        epochs = new long[records.length];
+        for (int i = 0; i < records.length; i++) epochs[i] = store.epochSecond(records[i]);
+        // counting sort by sender; it is stable, so every group keeps the time order
+        int codes = store.numbers().size();
+        senderStart = new int[codes + 1];
+        for (int r : records) senderStart[store.senderCode(r) + 1]++;
+        for (int c = 0; c < codes; c++) senderStart[c + 1] += senderStart[c];
+        int[] next = Arrays.copyOf(senderStart, codes);
+        bySender = new int[records.length];
+        for (int r : records) bySender[next[store.senderCode(r)]++] = r;
+    }
+
+    // Builds over a snapshot; the index only reads the records present at this point
+    public static TimeRangeIndex build(CdrStore snapshot) {
+        long t0 = System.nanoTime();
+        TimeRangeIndex index = new TimeRangeIndex(snapshot);
+        Metrics.SEARCH_TIME_INDEX.since(t0);
+        return index;
+    }
+
+    public int coverage() { return indexed; }
+
+    // Records of current (the indexed store or a later snapshot of it) whose epoch second lies in
+    // [from, to], in time order, ties in load order. A senderCode >= 0 keeps only that sender's calls.
+    public int[] find(long from, long to, int senderCode, CdrStore current) {
+        CdrEvents.Search event = new CdrEvents.Search();
+        event.begin();
+        long t0 = System.nanoTime();
+        int[] hits;
+        if (senderCode < 0) {
+            int lo = lowerBound(from), hi = to == Long.MAX_VALUE ? epochs.length : lowerBound(to + 1);
+            hits = Arrays.copyOfRange(records, lo, Math.max(lo, hi));
+        } else if (senderCode < senderStart.length - 1) {
+            int start = senderStart[senderCode], end = senderStart[senderCode + 1];
+            int lo = lowerBound(current, start, end, from);
+            int hi = to == Long.MAX_VALUE ? end : lowerBound(current, start, end, to + 1);
+            hits = Arrays.copyOfRange(bySender, lo, Math.max(lo, hi));
+        } else {
+            // a number first seen after the build has no indexed calls
+            hits = new int[0];
+        }
+        int n = hits.length, sorted = n;
+        for (int r = indexed; r < current.size(); r++) {
+            long epoch = current.epochSecond(r);
+            if (!current.hasTimestamp(r) || epoch < from || epoch > to) continue;
+            if (senderCode >= 0 && current.senderCode(r) != senderCode) continue;
+            if (n == hits.length) hits = Arrays.copyOf(hits, Math.max(16, n * 2));
+            hits[n++] = r;
+        }
+        if (n != hits.length) hits = Arrays.copyOf(hits, n);
+        // late records are few, but may belong anywhere in the time order
+        if (n > sorted) CdrSorter.sort(hits, CdrSorter.order(current, CdrSorter.Key.TIMESTAMP, false));
+        Metrics.SEARCH_TIME_RANGE.since(t0);
+        if (event.shouldCommit()) {
+            event.method = "time";
+            event.query = (from == Long.MIN_VALUE ? "*" : Timestamps.format(from)) + " .. "
+                    + (to == Long.MAX_VALUE ? "*" : Timestamps.format(to))
+                    + (senderCode < 0 ? "" : " sender " + current.numbers().get(senderCode));
+            event.matches = n;
+            event.commit();
+        }
+        return hits;
+    }
+
+    // First position whose epoch is >= epoch
+    private int lowerBound(long epoch) {
+        int lo = 0, hi = epochs.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (epochs[mid] < epoch) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // The same over bySender[from, to), reading epochs from the store since the group holds records only
+    private int lowerBound(CdrStore current, int from, int to, long epoch) {
+        int lo = from, hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (current.epochSecond(bySender[mid]) < epoch) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
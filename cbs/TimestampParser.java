@@ -0,0 +1,82 @@
+package cbs;
+
+// Hand-written, exception-free parser for the accepted CDR timestamp formats:
+//   yyyy-MM-dd:HH:mm:ss, yyyy-MM-dd:hh:mm:ss, yyyy-MM-dd HH:mm:ss and ISO yyyy-MM-ddTHH:mm[:ss[.fffffffff]]
+// The hh variant never resolved to a time without an AM/PM marker, so rows in that shape were always
+// accepted through the HH pattern; they are handled by the same layout here.
+// One parser per input stream: it remembers the layout of the first valid value and tries it first.
+public final class TimestampParser {
+
+    static final int COLON = 0, SPACE = 1, ISO = 2;
+    private static final byte[] SEPARATOR = {':', ' ', 'T'};
+    private static final String[] LAYOUT_NAMES = {"yyyy-MM-dd:HH:mm:ss", "yyyy-MM-dd HH:mm:ss", "ISO local date-time"};
+
+    private int layout = -1;
+    private long parsed;
+    private long unrecognised;
+
+    public long parsed() { return parsed; }
+    public long unrecognised() { return unrecognised; }
+
+    // Layout detected from the first valid value, or null before one has been seen
+    public String layoutName() { return layout < 0 ? null : LAYOUT_NAMES[layout]; }
+
+    // Epoch second of the trimmed value in b[off, off + len), or Timestamps.INVALID
+    public long parse(byte[] b, int off, int len) {
+        if (len < 16) return reject();
+        byte sep = b[off + 10];
+        int l = layout >= 0 && sep == SEPARATOR[layout] ? layout
+                : sep == ':' ? COLON : sep == ' ' ? SPACE : sep == 'T' ? ISO : -1;
+        if (l < 0) return reject();
+        long v = parse(l, b, off, len);
+        if (v == Timestamps.INVALID) return reject();
+        if (layout < 0) layout = l;
+        parsed++;
+        return v;
+    }
+
+    private long reject() {
+        unrecognised++;
+        return Timestamps.INVALID;
+    }
+
+    private static long parse(int layout, byte[] b, int off, int len) {
+        if (b[off + 4] != '-' || b[off + 7] != '-' || b[off + 13] != ':') return Timestamps.INVALID;
+        int year = digits(b, off, 4);
+        int month = digits(b, off + 5, 2);
+        int day = digits(b, off + 8, 2);
+        int hour = digits(b, off + 11, 2);
+        int minute = digits(b, off + 14, 2);
+        int second = 0;
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || minute < 0 || minute > 59) {
+            return Timestamps.INVALID;
+        }
+        if (layout == ISO) {
+            // ISO_LOCAL_DATE_TIME is strict: optional seconds and fraction, no day or hour overflow
+            if (len > 16) {
+                if (len < 19 || b[off + 16] != ':' || (second = digits(b, off + 17, 2)) < 0) return Timestamps.INVALID;
+                if (len > 19) {
+                    if (b[off + 19] != '.' || len > 29 || digits(b, off + 20, len - 20) < 0) return Timestamps.INVALID;
+                }
+            }
+            if (hour > 23 || second > 59 || day > Timestamps.monthLength(year, month)) return Timestamps.INVALID;
+        } else {
+            // Pattern formats resolve smartly: day 31 falls back to the last day of the month and 24:00:00 is next midnight
+            if (len != 19 || b[off + 16] != ':' || (second = digits(b, off + 17, 2)) < 0 || second > 59) return Timestamps.INVALID;
+            if (year == 0 || hour > 24 || (hour == 24 && (minute | second) != 0)) return Timestamps.INVALID;
+            day = Math.min(day, Timestamps.monthLength(year, month));
+        }
+        return Timestamps.epochDay(year, month, day) * 86400L + hour * 3600 + minute * 60 + second;
+    }
+
+    // Value of n ASCII digits, or -1 when any of them is not a digit
+    private static int digits(byte[] b, int off, int n) {
+        int v = 0;
+        for (int i = off, end = off + n; i < end; i++) {
+            int d = b[i] - '0';
+            if (d < 0 || d > 9) return -1;
+            v = v * 10 + d;
+        }
+        return v;
+    }
+}
@@ -0,0 +1,82 @@
+package cbs;
+
+// CDR timestamps are wall-clock times without a zone; they are kept as seconds since 1970-01-01T00:00 of that clock
+public final class Timestamps {
+
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private Timestamps() {}
+
+    // Epoch second of a single value, or INVALID when it matches none of the accepted formats
+    public static long parse(CharSequence ts) {
+        String s = ts.toString().trim();
+        byte[] b = new byte[s.length()];
+        for (int i = 0; i < b.length; i++) {
+            char c = s.charAt(i);
+            if (c > 0x7f) return INVALID;
+            b[i] = (byte) c;
+        }
+        return new TimestampParser().parse(b, 0, b.length);
+    }
+
+    // "yyyy-MM-dd HH:mm:ss"
+    public static String format(long epochSecond) {
+        char[] out = new char[19];
+        long days = Math.floorDiv(epochSecond, 86400L);
+        int secs = (int) Math.floorMod(epochSecond, 86400L);
+        long ymd = civil(days);
+        int year = (int) (ymd >> 9);
+        if (year < 1 || year > 9999) {
+            return java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+                    .format(java.time.LocalDateTime.ofEpochSecond(epochSecond, 0, java.time.ZoneOffset.UTC));
+        }
+        put(out, 0, year, 4);
+        out[4] = '-';
+        put(out, 5, (int) (ymd >> 5) & 0xf, 2);
+        out[7] = '-';
+        put(out, 8, (int) ymd & 0x1f, 2);
+        out[10] = ' ';
+        put(out, 11, secs / 3600, 2);
+        out[13] = ':';
+        put(out, 14, secs / 60 % 60, 2);
+        out[16] = ':';
+        put(out, 17, secs % 60, 2);
+        return new String(out);
+    }
+
+    private static void put(char[] out, int at, int v, int width) {
+        for (int i = at + width - 1; i >= at; i--, v /= 10) out[i] = (char) ('0' + v % 10);
+    }
+
+    // Days since 1970-01-01 of a proleptic Gregorian date
+    static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yoe = y - era * 400;
+        long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    // Inverse of epochDay, packed as year << 9 | month << 5 | day
+    static long civil(long epochDay) {
+        long z = epochDay + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        long day = doy - (153 * mp + 2) / 5 + 1;
+        long month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        return year << 9 | month << 5 | day;
+    }
+
+    static int monthLength(int year, int month) {
+        switch (month) {
+            case 2: return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4: case 6: case 9: case 11: return 30;
+            default: return 31;
+        }
+    }
+}